@@ -1,3 +1,5 @@
+import java.util.Arrays;
+
 /**
  * Implementation of the &quot;Advanced Encryption Standard&quot; (AES) with a key size of 256 bit.
  * The specification in &quot;Federal Information Processing Standards Publication 197&quot; defines
@@ -379,6 +381,15 @@ final class Aes256 {
         System.arraycopy(this._tmp, 0, outBlock, outIndex, BLOCK_SIZE);
     }
 
+    /**
+     * Overwrites the expanded key and the state with zeros. The cipher must not be used
+     * afterwards.
+     */
+    public void clear() {
+        Arrays.fill(this._expandedKey, (byte) 0);
+        Arrays.fill(this._tmp, (byte) 0);
+    }
+
     /**
      * Rotates the last three rows of the state. This method inverses {@link Aes256#shiftRows}.
      */
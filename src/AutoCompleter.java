@@ -0,0 +1,184 @@
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+
+import javax.swing.DefaultListModel;
+import javax.swing.JList;
+import javax.swing.JPopupMenu;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+/**
+ * Shows suggestions in a pop-up list under a text field while the user types. The suggestions
+ * are chosen with the arrow keys and applied with enter or a mouse click; escape closes the list.
+ *
+ * @author Haikal Izzuddin
+ *
+ */
+final class AutoCompleter {
+
+    /**
+     * Provides the suggestions.
+     */
+    @FunctionalInterface
+    interface Source {
+        /**
+         * Gets the suggestions for the given text.
+         *
+         * @param text the text of the field, non empty
+         * @param limit maximum number of suggestions
+         * @return the suggestions, best first
+         */
+        List<String> suggest(String text, int limit);
+    }
+
+    private final JTextField field;
+    private final Source source;
+    private final int limit;
+    private final JPopupMenu popup = new JPopupMenu();
+    private final DefaultListModel<String> suggestions = new DefaultListModel<>();
+    private final JList<String> list = new JList<>(this.suggestions);
+    private boolean applying = false;
+
+    private AutoCompleter(JTextField field, Source source) {
+        this.field = field;
+        this.source = source;
+        this.limit = Math.max(1, Configuration.getInstance().getInteger("autocomplete.max.suggestions", 8));
+
+        this.list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        this.list.setFocusable(false);
+        this.list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                apply();
+            }
+        });
+        JScrollPane scrollPane = new JScrollPane(this.list);
+        scrollPane.setBorder(null);
+        this.popup.add(scrollPane);
+        this.popup.setFocusable(false);
+
+        field.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                changed();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                changed();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                changed();
+            }
+        });
+        field.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                handleKey(e);
+            }
+        });
+        field.addFocusListener(new FocusAdapter() {
+            @Override
+            public void focusLost(FocusEvent e) {
+                AutoCompleter.this.popup.setVisible(false);
+            }
+        });
+    }
+
+    /**
+     * Installs auto-completion on the text field.
+     *
+     * @param field the text field
+     * @param source provides the suggestions
+     */
+    static void install(JTextField field, Source source) {
+        new AutoCompleter(field, source);
+    }
+
+    private void changed() {
+        if (!this.applying) {
+            SwingUtilities.invokeLater(this::refresh);
+        }
+    }
+
+    private void refresh() {
+        String text = this.field.getText();
+        if (!this.field.isFocusOwner() || text.isEmpty()) {
+            this.popup.setVisible(false);
+            return;
+        }
+        this.suggestions.clear();
+        for (String suggestion : this.source.suggest(text, this.limit)) {
+            if (!suggestion.equals(text)) {
+                this.suggestions.addElement(suggestion);
+            }
+        }
+        if (this.suggestions.isEmpty()) {
+            this.popup.setVisible(false);
+            return;
+        }
+        this.list.setVisibleRowCount(Math.min(this.suggestions.size(), this.limit));
+        this.list.clearSelection();
+        this.popup.setPopupSize(this.field.getWidth(), this.list.getPreferredScrollableViewportSize().height + 4);
+        this.popup.show(this.field, 0, this.field.getHeight());
+    }
+
+    private void handleKey(KeyEvent e) {
+        if (!this.popup.isVisible()) {
+            return;
+        }
+        int index = this.list.getSelectedIndex();
+        switch (e.getKeyCode()) {
+        case KeyEvent.VK_DOWN:
+            select(index + 1 < this.suggestions.size() ? index + 1 : 0);
+            e.consume();
+            break;
+        case KeyEvent.VK_UP:
+            select(index > 0 ? index - 1 : this.suggestions.size() - 1);
+            e.consume();
+            break;
+        case KeyEvent.VK_ENTER:
+            if (index >= 0) {
+                apply();
+                e.consume();
+            }
+            break;
+        case KeyEvent.VK_ESCAPE:
+            this.popup.setVisible(false);
+            e.consume();
+            break;
+        default:
+            break;
+        }
+    }
+
+    private void select(int index) {
+        this.list.setSelectedIndex(index);
+        this.list.ensureIndexIsVisible(index);
+    }
+
+    private void apply() {
+        String value = this.list.getSelectedValue();
+        this.popup.setVisible(false);
+        if (value == null) {
+            return;
+        }
+        this.applying = true;
+        try {
+            this.field.setText(value);
+        } finally {
+            this.applying = false;
+        }
+    }
+}
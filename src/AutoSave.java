@@ -0,0 +1,138 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.swing.Timer;
+
+/**
+ * Saves the modified document automatically, driven by the change events of the data model.
+ * A burst of modifications is saved once, {@code autosave.delay.millis} (default 2000) after
+ * the last one, and two saves are at least {@code autosave.min.interval.millis} (default 30000)
+ * apart. Enabled by the {@code autosave.enabled} configuration value.
+ *
+ * <p>
+ * Only documents which have a file name and a password are saved, never into a file which is
+ * newer than the document (see {@link DataModel#isOutdated(String)}), and a document is not written
+ * again if its content is the same as the one saved last time, for example when a modification
+ * has been undone. The save runs in the background on a snapshot, the frame stays enabled.
+ *
+ * @author Haikal Izzuddin
+ *
+ */
+final class AutoSave implements ModelChangeListener {
+
+    private final PasswordManagerFrame parent;
+    private final int delay;
+    private final long minInterval;
+    private final Timer timer;
+    private long lastSave = 0;
+    private byte[] savedHash = null;
+    private int savedCount = -1;
+    private boolean saving = false;
+
+    /**
+     * Creates the automatic save of the document of the given frame.
+     *
+     * @param parent the main frame
+     */
+    AutoSave(PasswordManagerFrame parent) {
+        this.parent = parent;
+        this.delay = Math.max(0, Configuration.getInstance().getInteger("autosave.delay.millis", 2000));
+        this.minInterval = Math.max(0, Configuration.getInstance().getInteger("autosave.min.interval.millis", 30000));
+        this.timer = new Timer(this.delay, event -> save());
+        this.timer.setRepeats(false);
+    }
+
+    /**
+     * Checks if the automatic save is enabled in the configuration.
+     *
+     * @return {@code true} if modified documents are saved automatically
+     */
+    static boolean isEnabled() {
+        return Configuration.getInstance().is("autosave.enabled", false);
+    }
+
+    /**
+     * Schedules a save after a modification; a pending save is postponed.
+     *
+     * @param event the modification
+     */
+    @Override
+    public void modelChanged(ModelChangeEvent event) {
+        if (event.getType() == ModelChangeEvent.Type.BULK_REPLACED) {
+            // another document, or the same one unlocked, nothing is known about its file
+            this.savedHash = null;
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        long wait = Math.max(this.delay, this.lastSave + this.minInterval - System.currentTimeMillis());
+        this.timer.setInitialDelay((int) Math.min(wait, Integer.MAX_VALUE));
+        this.timer.restart();
+    }
+
+    private void save() {
+        DataModel model = this.parent.getModel();
+        if (this.parent.isLocked() || !model.isModified() || model.getFileName() == null
+                || model.getPassword() == null || model.isOutdated(model.getFileName())) {
+            return;
+        }
+        if (this.saving || this.parent.isProcessing() || this.parent.hasBackgroundTasks()) {
+            schedule();
+            return;
+        }
+        this.saving = true;
+        // the file has been saved by the user since, its content is not known
+        byte[] previous = model.getSaveCount() == this.savedCount ? this.savedHash : null;
+        FileHelper.autoSaveFile(this.parent, previous, hash -> {
+            this.saving = false;
+            this.lastSave = System.currentTimeMillis();
+            if (hash != null) {
+                this.savedHash = hash;
+                this.savedCount = model.getSaveCount();
+            }
+            // modifications made while saving need another save
+            if (model.isModified()) {
+                schedule();
+            }
+        });
+    }
+
+    /**
+     * Computes the content hash of a document, from the entries in id order and the key. The
+     * secret values are not decrypted, their handles in the secret store are hashed instead.
+     * Equal values normally share a handle; if they do not, equal content hashes differently,
+     * which only causes an unneeded save.
+     *
+     * @param document the entries of the document, a snapshot which is not modified
+     * @param key the key of the document
+     * @return the content hash
+     */
+    static byte[] contentHash(Entries document, byte[] key) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        List<Entry> entries = new ArrayList<>(document.getEntry());
+        entries.sort(Comparator.comparing(Entry::getId, Comparator.nullsFirst(Comparator.naturalOrder())));
+        try (DataOutputStream out = new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), digest))) {
+            out.write(key);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                entry.writeSealed(out);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return digest.digest();
+    }
+}
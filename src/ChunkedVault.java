@@ -0,0 +1,225 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Chunked vault layout. Entries are grouped into independently compressed and encrypted chunks,
+ * and an encrypted directory maps the entry ids, titles and URL host names to the chunk holding
+ * them. Opening a vault decrypts the directory only, every chunk is decrypted when one of its
+ * entries is first accessed. The host names let the host index be built without loading a chunk.
+ *
+ * <pre>
+ * magic      8 bytes, "PMCHUNK1"
+ * length     4 bytes, length of the directory
+ * directory  IV + AES-256/CBC(GZIP(chunk offsets and lengths, entry ids, titles, hosts and chunk indexes))
+ * chunks     IV + AES-256/CBC(GZIP(XML document of the chunk entries)), one after the other
+ * </pre>
+ *
+ * @author Haikal Izzuddin
+ *
+ */
+final class ChunkedVault {
+
+    private static final byte[] MAGIC = "PMCHUNK1".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Converter for the XML document of a single chunk.
+     */
+    private static final XmlConverter<Entries> CONVERTER = new XmlConverter<>(Entries.class);
+
+    private final String fileName;
+    private final byte[] key;
+    private final long dataStart;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final List<List<Entry>> stubs;
+
+    private ChunkedVault(final String fileName, final byte[] key, final long dataStart,
+                         final long[] offsets, final int[] lengths) {
+        this.fileName = fileName;
+        this.key = key;
+        this.dataStart = dataStart;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.stubs = new ArrayList<>(offsets.length);
+        for (int i = 0; i < offsets.length; i++) {
+            this.stubs.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Checks if the given file is written in the chunked layout.
+     *
+     * @param fileName file name
+     * @return {@code true} if the file starts with the chunked vault header
+     * @throws IOException when I/O error occurred
+     */
+    static boolean isChunked(final String fileName) throws IOException {
+        byte[] header = new byte[MAGIC.length];
+        try (InputStream inputStream = new FileInputStream(fileName)) {
+            int read = 0;
+            while (read < header.length) {
+                int cur = inputStream.read(header, read, header.length - read);
+                if (cur < 0) {
+                    return false;
+                }
+                read += cur;
+            }
+        }
+        return Arrays.equals(MAGIC, header);
+    }
+
+    /**
+     * Opens a chunked vault. Only the directory is decrypted, the returned entries are stubs
+     * which load their chunk on first access.
+     *
+     * @param fileName file name
+     * @param key key for decryption
+     * @return the document with stub entries
+     * @throws IOException when I/O error occurred or the key is incorrect
+     */
+    static Entries open(final String fileName, final byte[] key) throws IOException {
+        Entries entries = new Entries();
+        try (DataInputStream file = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)))) {
+            byte[] header = new byte[MAGIC.length];
+            file.readFully(header);
+            if (!Arrays.equals(MAGIC, header)) {
+                throw new IOException("Not a chunked vault.");
+            }
+            byte[] directory = new byte[file.readInt()];
+            file.readFully(directory);
+
+            try (DataInputStream in = new DataInputStream(new GZIPInputStream(
+                    new CryptInputStream(new ByteArrayInputStream(directory), key)))) {
+                int chunkCount = in.readInt();
+                long[] offsets = new long[chunkCount];
+                int[] lengths = new int[chunkCount];
+                for (int i = 0; i < chunkCount; i++) {
+                    offsets[i] = in.readLong();
+                    lengths[i] = in.readInt();
+                }
+                ChunkedVault vault = new ChunkedVault(fileName, key,
+                        MAGIC.length + 4 + directory.length, offsets, lengths);
+                int entryCount = in.readInt();
+                for (int i = 0; i < entryCount; i++) {
+                    Entry stub = new Entry();
+                    stub.setId(in.readUTF());
+                    stub.setTitle(in.readUTF());
+                    String host = in.readUTF();
+                    stub.bindHost(host.isEmpty() ? null : host);
+                    int chunk = in.readInt();
+                    stub.bindChunk(vault, chunk);
+                    vault.stubs.get(chunk).add(stub);
+                    entries.getEntry().add(stub);
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Writes the document in chunked layout.
+     *
+     * @param fileName file name, the caller moves the file over the vault once it is written
+     * @param key key for encryption
+     * @param document the document, all of its entries must be loaded
+     * @param chunkSize maximum number of entries in a chunk
+     * @throws IOException when I/O error occurred
+     */
+    static void write(final String fileName, final byte[] key, final Entries document, final int chunkSize)
+            throws IOException {
+        List<Entry> entries = document.getEntry();
+        int chunkCount = (entries.size() + chunkSize - 1) / chunkSize;
+        List<byte[]> chunks = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            Entries chunk = new Entries();
+            chunk.getEntry().addAll(entries.subList(i * chunkSize, Math.min(entries.size(), (i + 1) * chunkSize)));
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (OutputStream out = new GZIPOutputStream(new CryptOutputStream(bytes, key))) {
+                CONVERTER.write(chunk, out);
+            }
+            chunks.add(bytes.toByteArray());
+        }
+
+        ByteArrayOutputStream directory = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new CryptOutputStream(directory, key)))) {
+            out.writeInt(chunkCount);
+            long offset = 0;
+            for (byte[] chunk : chunks) {
+                out.writeLong(offset);
+                out.writeInt(chunk.length);
+                offset += chunk.length;
+            }
+            out.writeInt(entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                out.writeUTF(entries.get(i).getId());
+                out.writeUTF(entries.get(i).getTitle());
+                String host = entries.get(i).urlHost();
+                out.writeUTF(host == null ? "" : host);
+                out.writeInt(i / chunkSize);
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(fileName))) {
+            out.write(MAGIC);
+            out.writeInt(directory.size());
+            directory.writeTo(out);
+            for (byte[] chunk : chunks) {
+                out.write(chunk);
+            }
+        }
+    }
+
+    /**
+     * Decrypts the given chunk and fills its stub entries. Does nothing if the chunk is already
+     * loaded.
+     *
+     * @param chunk index of the chunk
+     * @throws IOException when I/O error occurred
+     */
+    synchronized void loadChunk(final int chunk) throws IOException {
+        List<Entry> chunkStubs = this.stubs.get(chunk);
+        if (chunkStubs == null) {
+            return;
+        }
+        byte[] data = new byte[this.lengths[chunk]];
+        try (RandomAccessFile file = new RandomAccessFile(this.fileName, "r")) {
+            file.seek(this.dataStart + this.offsets[chunk]);
+            file.readFully(data);
+        }
+        Entries loaded;
+        try (InputStream in = new GZIPInputStream(new CryptInputStream(new ByteArrayInputStream(data), this.key))) {
+            loaded = CONVERTER.read(in);
+        }
+        List<Entry> loadedEntries = loaded.getEntry();
+        if (loadedEntries.size() != chunkStubs.size()) {
+            throw new IOException("Chunk " + chunk + " does not match the vault directory.");
+        }
+        // the file may have been replaced since the directory was read, nothing is filled then
+        for (int i = 0; i < chunkStubs.size(); i++) {
+            if (!Objects.equals(chunkStubs.get(i).getId(), loadedEntries.get(i).getId())) {
+                throw new IOException("Chunk " + chunk + " does not match the vault directory, "
+                        + "the file has been changed since it was opened.");
+            }
+        }
+        for (int i = 0; i < chunkStubs.size(); i++) {
+            chunkStubs.get(i).fill(loadedEntries.get(i));
+        }
+        this.stubs.set(chunk, null);
+    }
+}
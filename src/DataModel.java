@@ -1,20 +1,90 @@
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.SwingUtilities;
 
 /**
  * Data model of the application data.
  *
+ * <p>
+ * The model can be read from any thread. Modifications take the write lock of a
+ * {@link StampedLock} and increment the version, reads of the entries and of the title indexes
+ * take the read lock, or validate an optimistic stamp when they only read a field. Long running
+ * readers, like the searches, the background indexers and the save, work on a
+ * {@link #snapshot()} and do not hold the lock while reading it.
+ *
+ * <p>
+ * Every modification is published as a {@link ModelChangeEvent} to the subscribed
+ * {@link ModelChangeListener}s, on the event dispatch thread and in the order of subscription.
+ * The indexes of the model are updated with the same delta while the write lock is held, so
+ * they never disagree with the entries.
+ *
  * @author Gabor_Bata
  *
  */
 public class DataModel {
 
+    private static final Logger LOG = Logger.getLogger(DataModel.class.getName());
     private static volatile DataModel INSTANCE;
 
+    /**
+     * Background thread for building the indexes which are too slow to build on open.
+     */
+    private static final ExecutorService INDEXER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "passwordmanager-indexer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private final StampedLock lock = new StampedLock();
+    private final List<ModelChangeListener> listeners = new CopyOnWriteArrayList<>();
     private Entries entries = new Entries();
-    private String fileName = null;
-    private transient byte[] password = null;
-    private boolean modified = false;
+
+    /**
+     * Position of every entry in the entry list by id.
+     */
+    private final Map<String, Integer> slots = new HashMap<>();
+
+    /**
+     * Whether the entry list is shared with a snapshot, and has to be copied before modifying.
+     */
+    private volatile boolean shared = false;
+    private volatile int document = 0;
+    private volatile int saves = 0;
+    private final TitleTrie titleIndex = new TitleTrie();
+    private final SortedTitleIndex sortedTitles = new SortedTitleIndex();
+    private final TitleTrigramIndex trigramIndex = new TitleTrigramIndex();
+    private volatile FullTextIndex fullTextIndex = null;
+    private volatile HostIndex hostIndex = null;
+    private volatile ValueFrequencyIndex userValues = null;
+    private volatile ValueFrequencyIndex urlValues = null;
+    private volatile SortedTitles sortedTitleList = null;
+    private volatile int version = 0;
+    private volatile String fileName = null;
+    private transient volatile byte[] password = null;
+    private volatile boolean modified = false;
+
+    /**
+     * File which must not be overwritten, because the document has been opened from an out of
+     * date snapshot of it and modified before this was noticed.
+     */
+    private volatile String outdatedFile = null;
 
     private DataModel() {
         // not intended to be instantiated
@@ -37,12 +107,12 @@ public class DataModel {
     }
 
     /**
-     * Gets list of entries.
+     * Gets list of entries. The list is a read-only snapshot, see {@link #snapshot()}.
      *
      * @return list of entries
      */
     public final Entries getEntries() {
-        return this.entries;
+        return snapshot();
     }
 
     /**
@@ -51,7 +121,322 @@ public class DataModel {
      * @param entries entries
      */
     public final void setEntries(final Entries entries) {
+        ModelChangeEvent event;
+        long stamp = this.lock.writeLock();
+        try {
+            event = doSetEntries(entries);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+        publish(event);
+    }
+
+    private ModelChangeEvent doSetEntries(final Entries entries) {
         this.entries = entries;
+        this.shared = false;
+        this.document++;
+        this.slots.clear();
+        List<Entry> list = entries.getEntry();
+        for (int i = 0; i < list.size(); i++) {
+            Entry entry = list.get(i);
+            // documents written before the ids existed, or edited by hand, get new ids
+            if (entry.getId() == null || this.slots.containsKey(entry.getId())) {
+                entry.setId(newId());
+            }
+            this.slots.put(entry.getId(), i);
+        }
+        this.titleIndex.reset(entries.getEntry());
+        this.sortedTitles.reset(entries.getEntry());
+        this.trigramIndex.reset(entries.getEntry());
+        this.fullTextIndex = null;
+        this.hostIndex = null;
+        this.userValues = null;
+        this.urlValues = null;
+        this.version++;
+        scheduleFullTextIndex();
+        scheduleHostIndex();
+        scheduleValueIndexes();
+        return ModelChangeEvent.bulkReplaced(this.sortedTitles.size(), this.version);
+    }
+
+    /**
+     * Adds an entry. An entry without an id, or with the id of another entry, gets a new id.
+     *
+     * @param entry the new entry
+     */
+    public final void addEntry(final Entry entry) {
+        ModelChangeEvent event;
+        long stamp = this.lock.writeLock();
+        try {
+            event = doAddEntry(entry);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+        publish(event);
+    }
+
+    private ModelChangeEvent doAddEntry(final Entry entry) {
+        if (entry.getId() == null || this.slots.containsKey(entry.getId())) {
+            entry.setId(newId());
+        }
+        List<Entry> list = writableEntries();
+        this.slots.put(entry.getId(), list.size());
+        list.add(entry);
+        indexEntry(entry);
+        this.version++;
+        return ModelChangeEvent.added(entry, positionOf(entry), this.sortedTitles.size(), this.version);
+    }
+
+    /**
+     * Adds the entry to the indexes.
+     */
+    private void indexEntry(final Entry entry) {
+        this.titleIndex.add(entry);
+        this.sortedTitles.add(entry);
+        this.trigramIndex.add(entry);
+        FullTextIndex fullText = this.fullTextIndex;
+        if (fullText != null) {
+            fullText.add(entry);
+        }
+        HostIndex hosts = this.hostIndex;
+        if (hosts != null) {
+            hosts.add(entry);
+        }
+        ValueFrequencyIndex users = this.userValues;
+        if (users != null) {
+            users.add(entry);
+        }
+        ValueFrequencyIndex urls = this.urlValues;
+        if (urls != null) {
+            urls.add(entry);
+        }
+    }
+
+    /**
+     * Removes an entry.
+     *
+     * @param entry the entry to remove
+     */
+    public final void removeEntry(final Entry entry) {
+        ModelChangeEvent event;
+        long stamp = this.lock.writeLock();
+        try {
+            event = doRemoveEntry(entry);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+        publish(event);
+    }
+
+    private ModelChangeEvent doRemoveEntry(final Entry entry) {
+        int slot = slotOf(entry);
+        if (slot < 0) {
+            return null;
+        }
+        int index = positionOf(entry);
+        // the last entry takes the place of the removed one, so no entry is shifted
+        List<Entry> list = writableEntries();
+        Entry last = list.remove(list.size() - 1);
+        if (last != entry) {
+            list.set(slot, last);
+            this.slots.put(last.getId(), slot);
+        }
+        this.slots.remove(entry.getId());
+        unindexEntry(entry);
+        this.version++;
+        return ModelChangeEvent.removed(index, this.sortedTitles.size(), this.version);
+    }
+
+    /**
+     * Removes the entry from the indexes.
+     */
+    private void unindexEntry(final Entry entry) {
+        this.titleIndex.remove(entry);
+        this.sortedTitles.remove(entry);
+        this.trigramIndex.remove(entry);
+        FullTextIndex fullText = this.fullTextIndex;
+        if (fullText != null) {
+            fullText.remove(entry);
+        }
+        HostIndex hosts = this.hostIndex;
+        if (hosts != null) {
+            hosts.remove(entry);
+        }
+        ValueFrequencyIndex users = this.userValues;
+        if (users != null) {
+            users.remove(entry);
+        }
+        ValueFrequencyIndex urls = this.urlValues;
+        if (urls != null) {
+            urls.remove(entry);
+        }
+    }
+
+    /**
+     * Gets the position of the entry in the entry list.
+     *
+     * @return the position, or -1 if the entry is not in the model
+     */
+    private int slotOf(final Entry entry) {
+        Integer slot = entry.getId() == null ? null : this.slots.get(entry.getId());
+        return slot != null && this.entries.getEntry().get(slot) == entry ? slot : -1;
+    }
+
+    private static String newId() {
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * Gets the position of the entry title in the sorted title list.
+     */
+    private int positionOf(final Entry entry) {
+        return entry.getTitle() == null ? -1 : this.sortedTitles.indexOf(entry.getTitle());
+    }
+
+    /**
+     * Replaces an entry with a new one. The new entry takes the id and the place of the old one
+     * in the entry list. Readers see either the old or the new entry, never both or none of
+     * them. If the old entry is not in the model, the new one is added.
+     *
+     * @param oldEntry the entry to replace
+     * @param newEntry the new entry
+     */
+    public final void replaceEntry(final Entry oldEntry, final Entry newEntry) {
+        ModelChangeEvent event;
+        long stamp = this.lock.writeLock();
+        try {
+            event = doReplaceEntry(oldEntry, newEntry);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+        publish(event);
+    }
+
+    private ModelChangeEvent doReplaceEntry(final Entry oldEntry, final Entry newEntry) {
+        int slot = slotOf(oldEntry);
+        if (slot < 0) {
+            return doAddEntry(newEntry);
+        }
+        int oldIndex = positionOf(oldEntry);
+        newEntry.setId(oldEntry.getId());
+        writableEntries().set(slot, newEntry);
+        // the indexes hold the entry objects, the new object takes the place of the old one
+        unindexEntry(oldEntry);
+        indexEntry(newEntry);
+        this.version++;
+        return ModelChangeEvent.updated(newEntry, oldIndex, positionOf(newEntry),
+                this.sortedTitles.size(), this.version);
+    }
+
+    /**
+     * Gets entry by id.
+     *
+     * @param id entry id
+     * @return entry (can be null)
+     */
+    public Entry getEntryById(String id) {
+        Entry entry = id == null ? null : read(() -> {
+            Integer slot = this.slots.get(id);
+            return slot == null ? null : this.entries.getEntry().get(slot);
+        });
+        if (entry != null) {
+            entry.load();
+        }
+        return entry;
+    }
+
+    /**
+     * Subscribes to the modifications of the model.
+     *
+     * @param listener the listener
+     */
+    void addChangeListener(ModelChangeListener listener) {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Unsubscribes from the modifications of the model.
+     *
+     * @param listener the listener
+     */
+    void removeChangeListener(ModelChangeListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Notifies the listeners on the event dispatch thread. Called after the write lock has been
+     * released, so the listeners can read the model.
+     */
+    private void publish(ModelChangeEvent event) {
+        if (event == null) {
+            return;
+        }
+        if (!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(() -> publish(event));
+            return;
+        }
+        for (ModelChangeListener listener : this.listeners) {
+            try {
+                listener.modelChanged(event);
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "Could not notify a listener of " + event + ".", e);
+            }
+        }
+    }
+
+    /**
+     * Gets a snapshot of the entries, which is not affected by later modifications of the data
+     * model. Taking a snapshot is O(1): the entry list is shared, and copied by the first
+     * modification after the snapshot. Entries are never modified in place, editing replaces
+     * them, so the snapshot can be read from any thread without holding the lock.
+     *
+     * @return the snapshot
+     */
+    final Entries snapshot() {
+        long stamp = this.lock.readLock();
+        try {
+            return doSnapshot();
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Takes a snapshot, the caller holds the lock. Concurrent readers may all set the shared
+     * flag, the writer sees it after acquiring the write lock.
+     */
+    private Entries doSnapshot() {
+        this.shared = true;
+        return Entries.of(Collections.unmodifiableList(this.entries.getEntry()));
+    }
+
+    /**
+     * Gets the entry list for modification, copying it if it is shared with a snapshot.
+     */
+    private List<Entry> writableEntries() {
+        if (this.shared) {
+            this.entries = Entries.of(new ArrayList<>(this.entries.getEntry()));
+            this.shared = false;
+        }
+        return this.entries.getEntry();
+    }
+
+    /**
+     * Gets the document generation, which changes when another document is opened or created.
+     *
+     * @return the document generation
+     */
+    int getDocument() {
+        return this.document;
+    }
+
+    /**
+     * Gets the number of recorded saves, which changes whenever the document is saved.
+     *
+     * @return the number of saves
+     */
+    int getSaveCount() {
+        return this.saves;
     }
 
     /**
@@ -90,6 +475,52 @@ public class DataModel {
         this.modified = modified;
     }
 
+    /**
+     * Marks the file as newer than the document, the document is not saved into it anymore.
+     *
+     * @param fileName the file name
+     */
+    final void markOutdated(String fileName) {
+        this.outdatedFile = fileName;
+    }
+
+    /**
+     * Checks if the document is older than the given file, which must not be overwritten then.
+     *
+     * @param fileName the file name
+     * @return {@code true} if the document has been opened from an out of date snapshot of the
+     * file
+     */
+    final boolean isOutdated(String fileName) {
+        return fileName != null && fileName.equals(this.outdatedFile);
+    }
+
+    /**
+     * Records that a version of the document has been saved. Nothing is recorded if another
+     * document has been opened in the meantime, and the model stays modified if the entries have
+     * been modified since the given version.
+     *
+     * @param document the document generation which has been saved
+     * @param version the version which has been saved
+     * @param fileName the file name
+     * @param password the password
+     */
+    final void markSaved(int document, int version, String fileName, byte[] password) {
+        long stamp = this.lock.writeLock();
+        try {
+            if (this.document == document) {
+                this.saves++;
+                this.fileName = fileName;
+                this.password = password;
+                if (this.version == version) {
+                    this.modified = false;
+                }
+            }
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
     public byte[] getPassword() {
         return this.password;
     }
@@ -102,10 +533,39 @@ public class DataModel {
      * Clears all fields of the data model.
      */
     public final void clear() {
-        this.entries.getEntry().clear();
+        ModelChangeEvent event;
+        long stamp = this.lock.writeLock();
+        try {
+            event = doClear();
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+        publish(event);
+    }
+
+    private ModelChangeEvent doClear() {
+        this.entries = new Entries();
+        this.shared = false;
+        this.document++;
+        this.slots.clear();
+        this.titleIndex.clear();
+        this.sortedTitles.clear();
+        this.trigramIndex.clear();
+        this.fullTextIndex = isFullTextSearchEnabled() ? new FullTextIndex() : null;
+        this.hostIndex = new HostIndex();
+        if (isValueSuggestionEnabled()) {
+            this.userValues = ValueFrequencyIndex.build(this.entries.getEntry(), Entry::getUser);
+            this.urlValues = ValueFrequencyIndex.build(this.entries.getEntry(), DataModel::baseUrlOf);
+        } else {
+            this.userValues = null;
+            this.urlValues = null;
+        }
+        this.version++;
         this.fileName = null;
+        this.outdatedFile = null;
         this.password = null;
         this.modified = false;
+        return ModelChangeEvent.bulkReplaced(0, this.version);
     }
 
     /**
@@ -114,34 +574,348 @@ public class DataModel {
      * @return list of entry titles
      */
     public List<String> getTitles() {
-        List<String> list = new ArrayList<>(this.entries.getEntry().size());
-        for (Entry entry : this.entries.getEntry()) {
+        List<Entry> snapshot = snapshot().getEntry();
+        List<String> list = new ArrayList<>(snapshot.size());
+        for (Entry entry : snapshot) {
             list.add(entry.getTitle());
         }
         return list;
     }
 
     /**
-     * Gets entry index by title.
+     * Gets the number of entries.
+     *
+     * @return number of entries
+     */
+    public int getEntryCount() {
+        long stamp = this.lock.tryOptimisticRead();
+        int count = this.sortedTitles.size();
+        if (!this.lock.validate(stamp)) {
+            count = read(this.sortedTitles::size);
+        }
+        return count;
+    }
+
+    /**
+     * Gets every title in title order, as a read-only list which is not affected by later
+     * modifications. The list is built by walking the sorted title index once per version of the
+     * entries, so the scans in title order never sort.
+     *
+     * @return the titles in case insensitive title order
+     */
+    List<String> getSortedTitles() {
+        SortedTitles cached = this.sortedTitleList;
+        if (cached == null || cached.version != this.version) {
+            cached = read(() -> {
+                String[] titles = new String[this.sortedTitles.size()];
+                int[] position = {0};
+                this.sortedTitles.forEach(entry -> titles[position[0]++] = entry.getTitle());
+                return new SortedTitles(this.version, Collections.unmodifiableList(Arrays.asList(titles)));
+            });
+            this.sortedTitleList = cached;
+        }
+        return cached.titles;
+    }
+
+    /**
+     * Gets the title at the given position of the sorted title list.
+     *
+     * @param index position in case insensitive title order
+     * @return the title
+     */
+    public String getSortedTitle(int index) {
+        return read(() -> this.sortedTitles.get(index).getTitle());
+    }
+
+    /**
+     * Gets the position of the given title in the sorted title list.
      *
      * @param title entry title
-     * @return entry index
+     * @return position of the title, or -1 if there is no such title
      */
-    private int getEntryIndexByTitle(String title) {
-        return getTitles().indexOf(title);
+    public int getSortedIndexOf(String title) {
+        return read(() -> this.sortedTitles.indexOf(title));
     }
 
     /**
-     * Gets entry by title.
+     * Gets the entries whose title contains the given text, using the trigram index.
+     *
+     * @param text the text, ignoring case
+     * @return the matching entries, or {@code null} if the text is too short for the index
+     */
+    List<Entry> findTitlesContaining(String text) {
+        return read(() -> this.trigramIndex.find(text));
+    }
+
+    /**
+     * Estimates the number of entries whose title contains the given text.
+     *
+     * @param text the text, ignoring case
+     * @return upper bound of the number of matches, or -1 if the text is too short for the index
+     */
+    int estimateTitlesContaining(String text) {
+        return read(() -> this.trigramIndex.estimate(text));
+    }
+
+    /**
+     * Gets the version of the entries, which changes on every modification of the entries.
+     *
+     * @return the version
+     */
+    int getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Gets the full-text index of the user name, URL and notes fields.
+     *
+     * @return the full-text index, or {@code null} if it is disabled or still being built
+     */
+    FullTextIndex getFullTextIndex() {
+        return this.fullTextIndex;
+    }
+
+    /**
+     * Checks if the full-text search is enabled in the configuration.
+     *
+     * @return {@code true} if the full-text index is maintained
+     */
+    static boolean isFullTextSearchEnabled() {
+        return Configuration.getInstance().is("full.text.search.enabled", false);
+    }
+
+    /**
+     * Gets the index of the entries by URL host.
+     *
+     * @return the host index, or {@code null} if it is still being built
+     */
+    HostIndex getHostIndex() {
+        return this.hostIndex;
+    }
+
+    /**
+     * Gets the entries of a domain. The pattern {@code example.com} matches the entries of
+     * {@code example.com} and of its subdomains, {@code *.example.com} matches the subdomains
+     * only.
+     *
+     * @param pattern the domain pattern
+     * @return the matching entries in title order
+     */
+    public List<Entry> getEntriesByDomain(String pattern) {
+        HostIndex hosts = this.hostIndex;
+        List<Entry> result;
+        if (hosts != null) {
+            result = hosts.findDomain(pattern);
+        } else {
+            result = new ArrayList<>();
+            for (Entry entry : snapshot().getEntry()) {
+                if (HostIndex.matches(entry.urlHost(), pattern)) {
+                    result.add(entry);
+                }
+            }
+        }
+        result.sort((a, b) -> SortedTitleIndex.ORDER.compare(a.getTitle(), b.getTitle()));
+        return result;
+    }
+
+    /**
+     * Gets the entries which can be used on the given URL: the entries of its host and of the
+     * parent domains of the host.
+     *
+     * @param url the URL or host name
+     * @return the matching entries, the most specific host first
+     */
+    public List<Entry> getEntriesForUrl(String url) {
+        HostIndex hosts = this.hostIndex;
+        return (hosts != null ? hosts : HostIndex.build(snapshot().getEntry())).findParents(url);
+    }
+
+    /**
+     * Builds the full-text index in the background.
+     */
+    private void scheduleFullTextIndex() {
+        if (isFullTextSearchEnabled()) {
+            scheduleIndex("full-text", FullTextIndex::build, index -> this.fullTextIndex = index,
+                    () -> this.fullTextIndex == null);
+        }
+    }
+
+    /**
+     * Builds the URL host index in the background, reading the URL may load the entry from a
+     * chunked vault.
+     */
+    private void scheduleHostIndex() {
+        scheduleIndex("host", HostIndex::build, index -> this.hostIndex = index, () -> this.hostIndex == null);
+    }
+
+    /**
+     * Checks if the user names and URLs are suggested in the configuration. The index of the user
+     * names decrypts every one of them and keeps them as plain text, and reading the URLs loads
+     * every chunk of a chunked vault, so it is off by default.
+     *
+     * @return {@code true} if the value indexes are maintained
+     */
+    static boolean isValueSuggestionEnabled() {
+        return Configuration.getInstance().is("autocomplete.values.enabled", false);
+    }
+
+    /**
+     * Counts the user names and base URLs in the background, reading the user name decrypts it.
+     */
+    private void scheduleValueIndexes() {
+        if (!isValueSuggestionEnabled()) {
+            return;
+        }
+        scheduleIndex("user name", entries -> ValueFrequencyIndex.build(entries, Entry::getUser),
+                index -> this.userValues = index, () -> this.userValues == null);
+        scheduleIndex("URL", entries -> ValueFrequencyIndex.build(entries, DataModel::baseUrlOf),
+                index -> this.urlValues = index, () -> this.urlValues == null);
+    }
+
+    private static String baseUrlOf(Entry entry) {
+        return ValueFrequencyIndex.baseUrlOf(entry.getUrl());
+    }
+
+    /**
+     * Gets the user names starting with the given prefix, ignoring case.
+     *
+     * @param prefix the prefix
+     * @param limit maximum number of user names
+     * @return the user names, the most used first, none if the suggestions are disabled
+     */
+    public List<String> suggestUsers(String prefix, int limit) {
+        ValueFrequencyIndex users = this.userValues;
+        return users == null ? new ArrayList<>() : users.suggest(prefix, limit);
+    }
+
+    /**
+     * Gets the base URLs, like {@code https://github.com}, starting with the given prefix,
+     * ignoring case and the scheme.
+     *
+     * @param prefix the prefix
+     * @param limit maximum number of URLs
+     * @return the base URLs, the most used first, none if the suggestions are disabled
+     */
+    public List<String> suggestUrls(String prefix, int limit) {
+        ValueFrequencyIndex urls = this.urlValues;
+        return urls == null ? new ArrayList<>() : urls.suggest(prefix, limit);
+    }
+
+    /**
+     * Builds an index in the background. The index is installed on the event dispatch thread,
+     * and built again if the entries have been modified in the meantime. The caller holds the
+     * write lock.
+     *
+     * @param name name of the index
+     * @param builder builds the index from a snapshot of the entries
+     * @param installer installs the index
+     * @param missing checks if the index is still not installed
+     */
+    private <T> void scheduleIndex(String name, Function<List<Entry>, T> builder, Consumer<T> installer,
+            BooleanSupplier missing) {
+        final int buildVersion = this.version;
+        final List<Entry> snapshot = doSnapshot().getEntry();
+        INDEXER.execute(() -> {
+            T index;
+            try {
+                index = builder.apply(snapshot);
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Could not build the " + name + " index.", e);
+                return;
+            }
+            SwingUtilities.invokeLater(() -> {
+                long stamp = this.lock.writeLock();
+                try {
+                    if (this.version == buildVersion) {
+                        installer.accept(index);
+                    } else if (missing.getAsBoolean()) {
+                        scheduleIndex(name, builder, installer, missing);
+                    }
+                } finally {
+                    this.lock.unlockWrite(stamp);
+                }
+            });
+        });
+    }
+
+    /**
+     * Checks if an entry with the given title exists. Titles are compared case insensitively,
+     * the same way as {@link String#equalsIgnoreCase(String)} does.
+     *
+     * @param title entry title
+     * @return {@code true} if there is an entry with the given title
+     */
+    public boolean containsTitle(String title) {
+        return title != null && read(() -> this.titleIndex.contains(title));
+    }
+
+    /**
+     * Gets entry by title. The title is compared exactly, an imported document may hold titles
+     * which only differ in case. If the entry comes from a chunked vault, only its own chunk is
+     * decrypted.
      *
      * @param title entry title
      * @return entry (can be null)
      */
     public Entry getEntryByTitle(String title) {
-        int entryIndex = getEntryIndexByTitle(title);
-        if (entryIndex != -1) {
-            return this.entries.getEntry().get(entryIndex);
+        Entry entry = title == null ? null : read(() -> this.titleIndex.get(title));
+        if (entry != null) {
+            entry.load();
+        }
+        return entry;
+    }
+
+    /**
+     * Gets the titles starting with the given prefix, ignoring case.
+     *
+     * @param prefix the prefix
+     * @param limit maximum number of titles
+     * @return matching titles in case insensitive order
+     */
+    public List<String> completeTitle(String prefix, int limit) {
+        return read(() -> this.titleIndex.complete(prefix, limit));
+    }
+
+    /**
+     * The titles in title order at a version of the entries.
+     */
+    private static final class SortedTitles {
+        private final int version;
+        private final List<String> titles;
+
+        private SortedTitles(int version, List<String> titles) {
+            this.version = version;
+            this.titles = titles;
+        }
+    }
+
+    /**
+     * Reads the title indexes under the read lock.
+     *
+     * @param reader the read operation
+     * @return the result of the read
+     */
+    private <T> T read(Supplier<T> reader) {
+        long stamp = this.lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Folds the case of the title, so that two titles are equal after folding if and only if
+     * they are equal according to {@link String#equalsIgnoreCase(String)}.
+     *
+     * @param title the title
+     * @return the case folded title
+     */
+    static String foldTitle(String title) {
+        char[] chars = title.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = StringUtils.fold(chars[i]);
         }
-        return null;
+        return new String(chars);
     }
 }
@@ -1,6 +1,12 @@
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlRootElement;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -15,6 +21,7 @@ import java.util.List;
  *   &lt;complexContent&gt;
  *     &lt;restriction base="{http://www.w3.org/2001/XMLSchema}anyType"&gt;
  *       &lt;sequence&gt;
+ *         &lt;element name="id" type="{http://www.w3.org/2001/XMLSchema}string" minOccurs="0"/&gt;
  *         &lt;element name="title"&gt;
  *           &lt;simpleType&gt;
  *             &lt;restriction base="{http://www.w3.org/2001/XMLSchema}string"&gt;
@@ -32,15 +39,63 @@ import java.util.List;
  * &lt;/complexType&gt;
  * </pre>
  *
+ * <p>
+ * The id identifies the entry for its whole life, editing the entry keeps it. Documents written
+ * before ids existed get new ids when they are opened.
+ *
+ * <p>
+ * An entry read from a chunked vault starts as a stub which only knows its id, title and the host
+ * name of its URL; the rest of the fields are loaded from the owning chunk on first access.
+ *
+ * <p>
+ * The secret fields (user, password and notes) are kept encrypted by the {@link SecretStore},
+ * the entry only holds their handles, and they are decrypted only when their getter is called.
+ * Title and URL are kept as plain text for searching.
  *
  */
+@JsonPropertyOrder({"id", "title", "url", "user", "password", "notes"})
 class Entry {
 
+    private String id;
     private String title;
     private String url;
-    private String user;
-    private String password;
-    private String notes;
+    private long user;
+    private long password;
+    private long notes;
+
+    /**
+     * The vault of a stub, {@code null} once the entry is loaded. It is volatile and written
+     * last, so a thread which sees it cleared also sees the loaded fields.
+     */
+    private volatile ChunkedVault vault;
+    private int chunk = -1;
+
+    /**
+     * Host name of the URL of a stub, from the vault directory. Only valid while the entry is a
+     * stub.
+     */
+    private String stubHost;
+
+    /**
+     * Gets the value of the id property.
+     *
+     * @return possible object is {@link String}
+     *
+     */
+    @JsonProperty
+    String getId() {
+        return id;
+    }
+
+    /**
+     * Sets the value of the id property.
+     *
+     * @param value allowed object is {@link String}
+     *
+     */
+    void setId(String value) {
+        this.id = value;
+    }
 
     /**
      * Gets the value of the title property.
@@ -48,6 +103,7 @@ class Entry {
      * @return possible object is {@link String}
      *
      */
+    @JsonProperty
     String getTitle() {
         return title;
     }
@@ -68,7 +124,9 @@ class Entry {
      * @return possible object is {@link String}
      *
      */
+    @JsonProperty
     String getUrl() {
+        load();
         return url;
     }
 
@@ -88,8 +146,10 @@ class Entry {
      * @return possible object is {@link String}
      *
      */
+    @JsonProperty
     String getUser() {
-        return user;
+        load();
+        return SecretStore.getInstance().open(this.user);
     }
 
     /**
@@ -99,7 +159,7 @@ class Entry {
      *
      */
     void setUser(String value) {
-        this.user = value;
+        this.user = SecretStore.getInstance().seal(value);
     }
 
     /**
@@ -108,8 +168,10 @@ class Entry {
      * @return possible object is {@link String}
      *
      */
+    @JsonProperty
     String getPassword() {
-        return password;
+        load();
+        return SecretStore.getInstance().open(this.password);
     }
 
     /**
@@ -119,7 +181,7 @@ class Entry {
      *
      */
     void setPassword(String value) {
-        this.password = value;
+        this.password = SecretStore.getInstance().seal(value);
     }
 
     /**
@@ -128,8 +190,10 @@ class Entry {
      * @return possible object is {@link String}
      *
      */
+    @JsonProperty
     String getNotes() {
-        return notes;
+        load();
+        return SecretStore.getInstance().open(this.notes);
     }
 
     /**
@@ -139,9 +203,172 @@ class Entry {
      *
      */
     void setNotes(String value) {
-        this.notes = value;
+        this.notes = SecretStore.getInstance().seal(value);
+    }
+
+    /**
+     * Estimates the heap size of this entry in bytes, without loading or decrypting it.
+     *
+     * @return the estimated size
+     */
+    int footprint() {
+        // the secret values are shared in the arena of the secret store, and are never freed
+        return 64 + chars(this.id) + chars(this.title) + chars(this.url);
+    }
+
+    private static int chars(String value) {
+        return value == null ? 0 : 40 + value.length() * 2;
     }
 
+    /**
+     * Turns this entry into a stub which is loaded from the given chunk on first access.
+     *
+     * @param vault the vault holding the chunk
+     * @param chunk index of the chunk
+     */
+    void bindChunk(ChunkedVault vault, int chunk) {
+        this.chunk = chunk;
+        this.vault = vault;
+    }
+
+    /**
+     * Sets the host name of the URL of this stub, as stored in the vault directory. It must be
+     * set before the stub is bound to its chunk.
+     *
+     * @param host the normalised host name, or {@code null} if the URL has none
+     */
+    void bindHost(String host) {
+        this.stubHost = host;
+    }
+
+    /**
+     * Gets the normalised host name of the URL, see {@link HostIndex#hostOf(String)}. A stub
+     * answers from the vault directory without loading its chunk.
+     *
+     * @return the host name, or {@code null} if the URL has none
+     * @throws IllegalStateException if the chunk of the stub cannot be read
+     */
+    String urlHost() {
+        if (this.vault != null) {
+            return this.stubHost;
+        }
+        return HostIndex.hostOf(getUrl());
+    }
+
+    /**
+     * Fills the fields of this stub with the data of the fully loaded entry.
+     *
+     * @param source the loaded entry
+     */
+    void fill(Entry source) {
+        this.url = source.url;
+        this.user = source.user;
+        this.password = source.password;
+        this.notes = source.notes;
+        // the chunk index is left as it is, a thread which has just seen the vault may still use it
+        this.vault = null;
+    }
+
+    /**
+     * Writes this entry with the handles of its secret values, which stay sealed in the secret
+     * store.
+     *
+     * @param out the stream
+     * @throws IOException if the entry cannot be written
+     */
+    void writeSealed(DataOutputStream out) throws IOException {
+        load();
+        SnapshotCache.writeString(out, this.id);
+        SnapshotCache.writeString(out, this.title);
+        SnapshotCache.writeString(out, this.url);
+        out.writeLong(this.user);
+        out.writeLong(this.password);
+        out.writeLong(this.notes);
+    }
+
+    /**
+     * Writes this entry with the plain values of its secret fields, in the string format of
+     * {@link SnapshotCache#writeString(DataOutputStream, String)}. The values are decrypted into
+     * byte arrays which are wiped once written, the stream is expected to encrypt them.
+     *
+     * @param out the stream
+     * @throws IOException if the entry cannot be written
+     */
+    void writePlain(DataOutputStream out) throws IOException {
+        load();
+        SnapshotCache.writeString(out, this.id);
+        SnapshotCache.writeString(out, this.title);
+        SnapshotCache.writeString(out, this.url);
+        writeSecret(out, this.user);
+        writeSecret(out, this.password);
+        writeSecret(out, this.notes);
+    }
+
+    private static void writeSecret(DataOutputStream out, long handle) throws IOException {
+        byte[] plain = SecretStore.getInstance().openBytes(handle);
+        if (plain == null) {
+            out.writeInt(-1);
+            return;
+        }
+        try {
+            out.writeInt(plain.length);
+            out.write(plain);
+        } finally {
+            Arrays.fill(plain, (byte) 0);
+        }
+    }
+
+    /**
+     * Reads an entry written by {@link #writePlain(DataOutputStream)}, the secret values are
+     * sealed in the secret store again.
+     *
+     * @param in the stream
+     * @return the entry
+     * @throws IOException if the entry cannot be read
+     */
+    static Entry readPlain(DataInputStream in) throws IOException {
+        Entry entry = new Entry();
+        entry.id = SnapshotCache.readString(in);
+        entry.title = SnapshotCache.readString(in);
+        entry.url = SnapshotCache.readString(in);
+        entry.user = readSecret(in);
+        entry.password = readSecret(in);
+        entry.notes = readSecret(in);
+        return entry;
+    }
+
+    private static long readSecret(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return SecretStore.NONE;
+        }
+        if (length < 0 || length > SnapshotCache.MAX_STRING_LENGTH) {
+            throw new IOException("Invalid field length: " + length + ".");
+        }
+        byte[] plain = new byte[length];
+        try {
+            in.readFully(plain);
+            return SecretStore.getInstance().seal(plain);
+        } finally {
+            Arrays.fill(plain, (byte) 0);
+        }
+    }
+
+    /**
+     * Loads the owning chunk if this entry is a stub, otherwise does nothing.
+     *
+     * @throws IllegalStateException if the chunk cannot be read
+     */
+    void load() {
+        ChunkedVault owner = this.vault;
+        if (owner != null) {
+            try {
+                owner.loadChunk(this.chunk);
+            } catch (Exception e) {
+                throw new IllegalStateException("Cannot load entry data:\n" + e.getMessage(), e);
+            }
+        }
+    }
 }
 
 /**
@@ -189,6 +416,7 @@ class Entries {
      *
      * @return list of {@link Entry} objects
      */
+    @JsonProperty
     List<Entry> getEntry() {
         if (entry == null) {
             entry = new ArrayList<>();
@@ -196,4 +424,25 @@ class Entries {
         return this.entry;
     }
 
+    /**
+     * Creates a document over the given list, the list is not copied.
+     *
+     * @param list the entries
+     * @return the document
+     */
+    static Entries of(List<Entry> list) {
+        Entries entries = new Entries();
+        entries.entry = list;
+        return entries;
+    }
+
+    /**
+     * Loads every stub entry of this document, so it can be written safely even over the file it
+     * has been read from.
+     */
+    void loadAll() {
+        for (Entry e : getEntry()) {
+            e.load();
+        }
+    }
 }
\ No newline at end of file
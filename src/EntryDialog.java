@@ -65,14 +65,21 @@ class EntryDialog extends JDialog implements ActionListener {
 
         fieldPanel.add(new JLabel("Title:"));
         this.titleField = TextComponentFactory.newTextField();
+        AutoCompleter.install(this.titleField, parent.getModel()::completeTitle);
         fieldPanel.add(this.titleField);
 
         fieldPanel.add(new JLabel("URL:"));
         this.urlField = TextComponentFactory.newTextField();
+        if (DataModel.isValueSuggestionEnabled()) {
+            AutoCompleter.install(this.urlField, parent.getModel()::suggestUrls);
+        }
         fieldPanel.add(this.urlField);
 
         fieldPanel.add(new JLabel("User name:"));
         this.userField = TextComponentFactory.newTextField();
+        if (DataModel.isValueSuggestionEnabled()) {
+            AutoCompleter.install(this.userField, parent.getModel()::suggestUsers);
+        }
         fieldPanel.add(this.userField);
 
         fieldPanel.add(new JLabel("Password:"));
@@ -191,11 +198,15 @@ class EntryDialog extends JDialog implements ActionListener {
         }
         this.originalTitle = entry.getTitle() == null ? "" : entry.getTitle();
         this.titleField.setText(this.originalTitle + (this.newEntry ? " (copy)" : ""));
-        this.userField.setText(entry.getUser() == null ? "" : entry.getUser());
-        this.passwordField.setText(entry.getPassword() == null ? "" : entry.getPassword());
-        this.repeatField.setText(entry.getPassword() == null ? "" : entry.getPassword());
+        // secret fields are decrypted on access, so each of them is fetched only once
+        String user = entry.getUser();
+        String password = entry.getPassword();
+        String notes = entry.getNotes();
+        this.userField.setText(user == null ? "" : user);
+        this.passwordField.setText(password == null ? "" : password);
+        this.repeatField.setText(password == null ? "" : password);
         this.urlField.setText(entry.getUrl() == null ? "" : entry.getUrl());
-        this.notesField.setText(entry.getNotes() == null ? "" : entry.getNotes());
+        this.notesField.setText(notes == null ? "" : notes);
         this.notesField.setCaretPosition(0);
     }
 
@@ -254,12 +265,7 @@ class EntryDialog extends JDialog implements ActionListener {
             currentTitleText = "";
         }
         if (this.newEntry || !currentTitleText.equalsIgnoreCase(this.originalTitle)) {
-            for (Entry entry : parent.getModel().getEntries().getEntry()) {
-                if (currentTitleText.equalsIgnoreCase(entry.getTitle())) {
-                    titleIsOk = false;
-                    break;
-                }
-            }
+            titleIsOk = !parent.getModel().containsTitle(currentTitleText);
         }
         return titleIsOk;
     }
@@ -0,0 +1,161 @@
+import java.util.Collections;
+import java.util.List;
+
+import javax.swing.AbstractListModel;
+
+/**
+ * List model of the entry title list. Without a search filter it reads the titles directly from
+ * the sorted title index of the data model, otherwise from the list of matching titles, so no
+ * element is copied into the model. Every refresh fires at most two coalesced events.
+ *
+ * <p>
+ * While every entry is shown, the modifications of the data model are applied as single row
+ * insertions and removals. The filtered list is left to the search, which runs again.
+ *
+ * @author Haikal Izzuddin
+ *
+ */
+class EntryTitleListModel extends AbstractListModel<String> implements ModelChangeListener {
+
+    private static final long serialVersionUID = -2367429562941946321L;
+
+    private final DataModel model;
+
+    /**
+     * Matching titles in title order, or {@code null} if the list shows every entry.
+     */
+    private List<String> filtered = null;
+
+    /**
+     * Whether the filtered titles are in title order.
+     */
+    private boolean sorted = true;
+
+    private int size = 0;
+
+    /**
+     * Creates a new list model on top of the given data model.
+     *
+     * @param model the data model
+     */
+    EntryTitleListModel(DataModel model) {
+        this.model = model;
+    }
+
+    @Override
+    public int getSize() {
+        return this.size;
+    }
+
+    @Override
+    public String getElementAt(int index) {
+        if (this.filtered == null) {
+            // a background worker may replace the entries while the list is painted, the list is
+            // refreshed when the worker is done
+            return index < this.model.getEntryCount() ? this.model.getSortedTitle(index) : "";
+        }
+        return this.filtered.get(index);
+    }
+
+    @Override
+    public void modelChanged(ModelChangeEvent event) {
+        if (this.filtered != null) {
+            return;
+        }
+        switch (event.getType()) {
+        case ADDED:
+            inserted(event.getNewIndex());
+            break;
+        case REMOVED:
+            deleted(event.getOldIndex());
+            break;
+        case UPDATED:
+            if (event.getOldIndex() == event.getNewIndex() && event.getOldIndex() >= 0) {
+                fireContentsChanged(this, event.getOldIndex(), event.getOldIndex());
+            } else {
+                deleted(event.getOldIndex());
+                inserted(event.getNewIndex());
+            }
+            break;
+        default:
+            showAll();
+            return;
+        }
+        if (this.size != event.getCount()) {
+            // the events of a modification on another thread arrive later, when the model may
+            // have been modified again
+            showAll();
+        }
+    }
+
+    private void inserted(int index) {
+        if (index < 0) {
+            showAll();
+            return;
+        }
+        this.size++;
+        fireIntervalAdded(this, index, index);
+    }
+
+    private void deleted(int index) {
+        if (index < 0 || index >= this.size) {
+            showAll();
+            return;
+        }
+        this.size--;
+        fireIntervalRemoved(this, index, index);
+    }
+
+    /**
+     * Shows every entry of the data model.
+     */
+    void showAll() {
+        update(null, this.model.getEntryCount());
+    }
+
+    /**
+     * Shows only the given titles.
+     *
+     * @param titles matching titles
+     * @param inTitleOrder whether the titles are in title order, or ranked otherwise
+     */
+    void showFiltered(List<String> titles, boolean inTitleOrder) {
+        this.sorted = inTitleOrder;
+        update(titles, titles.size());
+    }
+
+    /**
+     * Gets the position of the given title in the list.
+     *
+     * @param title the title
+     * @return position of the title, or -1 if the title is not in the list
+     */
+    int indexOf(String title) {
+        if (title == null) {
+            return -1;
+        }
+        if (this.filtered == null) {
+            return this.model.getSortedIndexOf(title);
+        }
+        if (!this.sorted) {
+            return this.filtered.indexOf(title);
+        }
+        int index = Collections.binarySearch(this.filtered, title, SortedTitleIndex.ORDER);
+        return index < 0 ? -1 : index;
+    }
+
+    private void update(List<String> titles, int newSize) {
+        int oldSize = this.size;
+        this.filtered = titles;
+        this.size = newSize;
+        int common = Math.min(oldSize, newSize);
+        if (common > 0) {
+            fireContentsChanged(this, 0, common - 1);
+        }
+        if (newSize > oldSize) {
+            fireIntervalAdded(this, oldSize, newSize - 1);
+        } else if (newSize < oldSize) {
+            fireIntervalRemoved(this, newSize, oldSize - 1);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tokenised inverted index over the user name, URL and notes fields of the entries. The password
+ * field is never indexed. Results are ranked by the sum of the field weighted token frequencies,
+ * scaled by the inverse document frequency of the tokens.
+ *
+ * @author Haikal Izzuddin
+ *
+ */
+final class FullTextIndex {
+
+    private static final float USER_WEIGHT = 3.0f;
+    private static final float URL_WEIGHT = 2.0f;
+    private static final float NOTES_WEIGHT = 1.0f;
+
+    private final Map<String, Map<Entry, Float>> postings = new HashMap<>();
+    private final Map<Entry, Map<String, Float>> tokensOf = new IdentityHashMap<>();
+
+    /**
+     * Builds a new index from the given entries.
+     *
+     * @param entries the entries
+     * @return the index
+     */
+    static FullTextIndex build(List<Entry> entries) {
+        FullTextIndex index = new FullTextIndex();
+        for (Entry entry : entries) {
+            index.add(entry);
+        }
+        return index;
+    }
+
+    /**
+     * Adds an entry to the index.
+     *
+     * @param entry the entry
+     */
+    synchronized void add(Entry entry) {
+        if (this.tokensOf.containsKey(entry)) {
+            return;
+        }
+        Map<String, Float> weights = new HashMap<>();
+        addTokens(weights, entry.getUser(), USER_WEIGHT);
+        addTokens(weights, entry.getUrl(), URL_WEIGHT);
+        addTokens(weights, entry.getNotes(), NOTES_WEIGHT);
+        this.tokensOf.put(entry, weights);
+        for (Map.Entry<String, Float> weight : weights.entrySet()) {
+            this.postings.computeIfAbsent(weight.getKey(), key -> new IdentityHashMap<>()).put(entry, weight.getValue());
+        }
+    }
+
+    /**
+     * Removes an entry from the index.
+     *
+     * @param entry the entry
+     */
+    synchronized void remove(Entry entry) {
+        Map<String, Float> weights = this.tokensOf.remove(entry);
+        if (weights == null) {
+            return;
+        }
+        for (String token : weights.keySet()) {
+            Map<Entry, Float> posting = this.postings.get(token);
+            if (posting != null) {
+                posting.remove(entry);
+                if (posting.isEmpty()) {
+                    this.postings.remove(token);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the entries which contain every token of the query.
+     *
+     * @param query the query text
+     * @return the matching entries, best match first
+     */
+    synchronized List<Entry> search(String query) {
+        List<String> tokens = tokenize(query);
+        List<Entry> result = new ArrayList<>();
+        if (tokens.isEmpty()) {
+            return result;
+        }
+        List<Map<Entry, Float>> lists = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            Map<Entry, Float> posting = this.postings.get(token);
+            if (posting == null) {
+                return result;
+            }
+            lists.add(posting);
+        }
+        lists.sort((a, b) -> Integer.compare(a.size(), b.size()));
+
+        int documents = this.tokensOf.size();
+        Map<Entry, Float> scores = new IdentityHashMap<>();
+        for (Map.Entry<Entry, Float> candidate : lists.get(0).entrySet()) {
+            float score = 0;
+            for (Map<Entry, Float> posting : lists) {
+                Float weight = posting.get(candidate.getKey());
+                if (weight == null) {
+                    score = -1;
+                    break;
+                }
+                score += weight * (float) Math.log(1.0 + (double) documents / posting.size());
+            }
+            if (score >= 0) {
+                scores.put(candidate.getKey(), score);
+            }
+        }
+        result.addAll(scores.keySet());
+        result.sort((a, b) -> {
+            int c = Float.compare(scores.get(b), scores.get(a));
+            return c != 0 ? c : SortedTitleIndex.ORDER.compare(a.getTitle(), b.getTitle());
+        });
+        return result;
+    }
+
+    /**
+     * Estimates the number of entries containing every token, which is the number of entries
+     * containing the rarest of them.
+     *
+     * @param tokens case folded tokens, non empty
+     * @return the number of candidates
+     */
+    synchronized int estimate(List<String> tokens) {
+        int min = Integer.MAX_VALUE;
+        for (String token : tokens) {
+            Map<Entry, Float> posting = this.postings.get(token);
+            min = Math.min(min, posting == null ? 0 : posting.size());
+        }
+        return min;
+    }
+
+    /**
+     * Finds the entries which contain every token in any of the indexed fields.
+     *
+     * @param tokens case folded tokens, non empty
+     * @return the matching entries in no particular order
+     */
+    synchronized List<Entry> find(List<String> tokens) {
+        Map<Entry, Float> smallest = null;
+        for (String token : tokens) {
+            Map<Entry, Float> posting = this.postings.get(token);
+            if (posting == null) {
+                return new ArrayList<>();
+            }
+            if (smallest == null || posting.size() < smallest.size()) {
+                smallest = posting;
+            }
+        }
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : smallest.keySet()) {
+            if (this.tokensOf.get(entry).keySet().containsAll(tokens)) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Splits the text into case folded tokens of letters and digits.
+     *
+     * @param text the text, can be null
+     * @return list of tokens
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                token.append(StringUtils.fold(c));
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        return tokens;
+    }
+
+    private static void addTokens(Map<String, Float> weights, String text, float weight) {
+        for (String token : tokenize(text)) {
+            weights.merge(token, weight, Float::sum);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fuzzy subsequence matcher in the style of fzf. A title matches if it contains the characters of
+ * the pattern in the same order, ignoring case. The score rewards matches at word starts and
+ * consecutive runs, and penalises gaps. Only the best {@code k} titles are kept in a bounded heap
+ * of primitive arrays, and scoring a title does not allocate.
+ *
+ * <p>
+ * A matcher is used by one thread. A parallel scan gives every part its own matcher and merges
+ * them in order at the end.
+ *
+ * @author Haikal Izzuddin
+ *
+ */
+final class FuzzyMatcher {
+
+    /**
+     * Score of a title which does not match the pattern.
+     */
+    static final int NO_MATCH = Integer.MIN_VALUE;
+
+    private static final int SCORE_MATCH = 16;
+    private static final int PENALTY_GAP_START = 3;
+    private static final int PENALTY_GAP_EXTENSION = 1;
+    private static final int BONUS_BOUNDARY = 8;
+    private static final int BONUS_CAMEL = 7;
+    private static final int BONUS_CONSECUTIVE = 4;
+    private static final int BONUS_FIRST_CHAR_MULTIPLIER = 2;
+
+    private final char[] pattern;
+    private final int limit;
+
+    private final int[] heapScores;
+    private final int[] heapOrder;
+    private final String[] heapTitles;
+    private int heapSize = 0;
+    private final List<String> matches = new ArrayList<>();
+
+    /**
+     * Creates a matcher for the given pattern.
+     *
+     * @param pattern the pattern
+     * @param limit maximum number of results
+     */
+    FuzzyMatcher(String pattern, int limit) {
+        this.pattern = new char[pattern.length()];
+        for (int i = 0; i < pattern.length(); i++) {
+            this.pattern[i] = StringUtils.fold(pattern.charAt(i));
+        }
+        this.limit = Math.max(1, limit);
+        this.heapScores = new int[this.limit];
+        this.heapOrder = new int[this.limit];
+        this.heapTitles = new String[this.limit];
+    }
+
+    /**
+     * Scores the title and keeps it if it is among the best matches so far. Equal scores keep
+     * the title at the lower position.
+     *
+     * @param position position of the title in title order
+     * @param title the title
+     */
+    void accept(int position, String title) {
+        int score = score(title);
+        if (score != NO_MATCH) {
+            this.matches.add(title);
+            keep(title, score, position);
+        }
+    }
+
+    /**
+     * Adds the matches of a matcher of the same pattern, which has scanned the titles following
+     * the ones scanned by this matcher.
+     *
+     * @param other the other matcher
+     */
+    void merge(FuzzyMatcher other) {
+        this.matches.addAll(other.matches);
+        for (int i = 0; i < other.heapSize; i++) {
+            keep(other.heapTitles[i], other.heapScores[i], other.heapOrder[i]);
+        }
+    }
+
+    /**
+     * Gets every matching title.
+     *
+     * @return the matching titles in the order they have been scanned
+     */
+    List<String> getMatches() {
+        return this.matches;
+    }
+
+    private void keep(String title, int score, int position) {
+        if (this.heapSize < this.limit) {
+            int i = this.heapSize++;
+            set(i, score, position, title);
+            siftUp(i);
+        } else if (better(score, position, this.heapScores[0], this.heapOrder[0])) {
+            set(0, score, position, title);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Gets the best matching titles.
+     *
+     * @return matching titles, best match first
+     */
+    List<String> getResults() {
+        int size = this.heapSize;
+        String[] sorted = new String[size];
+        while (this.heapSize > 0) {
+            int last = --this.heapSize;
+            sorted[last] = this.heapTitles[0];
+            set(0, this.heapScores[last], this.heapOrder[last], this.heapTitles[last]);
+            siftDown(0);
+        }
+        List<String> results = new ArrayList<>(size);
+        for (String title : sorted) {
+            results.add(title);
+        }
+        return results;
+    }
+
+    /**
+     * Scores the title against the pattern.
+     *
+     * @param text the title
+     * @return the score, or {@link #NO_MATCH}
+     */
+    int score(String text) {
+        int n = text == null ? 0 : text.length();
+        int m = this.pattern.length;
+        if (m == 0) {
+            return 0;
+        }
+        if (m > n) {
+            return NO_MATCH;
+        }
+
+        // find the first occurrence of the subsequence
+        int p = 0;
+        int end = -1;
+        for (int i = 0; i < n; i++) {
+            if (StringUtils.fold(text.charAt(i)) == this.pattern[p] && ++p == m) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            return NO_MATCH;
+        }
+
+        // shorten it from the left
+        p = m - 1;
+        int start = end;
+        for (int i = end; i >= 0; i--) {
+            if (StringUtils.fold(text.charAt(i)) == this.pattern[p]) {
+                if (p == 0) {
+                    start = i;
+                    break;
+                }
+                p--;
+            }
+        }
+
+        int score = 0;
+        int firstBonus = 0;
+        boolean inGap = false;
+        p = 0;
+        char prev = start > 0 ? text.charAt(start - 1) : ' ';
+        for (int i = start; i <= end; i++) {
+            char c = text.charAt(i);
+            if (p < m && StringUtils.fold(c) == this.pattern[p]) {
+                int bonus = bonus(prev, c);
+                if (inGap || p == 0) {
+                    firstBonus = bonus;
+                } else {
+                    bonus = Math.max(bonus, Math.max(firstBonus, BONUS_CONSECUTIVE));
+                }
+                score += SCORE_MATCH + (p == 0 ? bonus * BONUS_FIRST_CHAR_MULTIPLIER : bonus);
+                inGap = false;
+                p++;
+            } else {
+                score -= inGap ? PENALTY_GAP_EXTENSION : PENALTY_GAP_START;
+                inGap = true;
+            }
+            prev = c;
+        }
+        return score;
+    }
+
+    private static int bonus(char prev, char c) {
+        if (!Character.isLetterOrDigit(prev) && Character.isLetterOrDigit(c)) {
+            return BONUS_BOUNDARY;
+        }
+        if (Character.isLowerCase(prev) && Character.isUpperCase(c)
+                || !Character.isDigit(prev) && Character.isDigit(c)) {
+            return BONUS_CAMEL;
+        }
+        return 0;
+    }
+
+    private static boolean better(int score, int order, int otherScore, int otherOrder) {
+        return score != otherScore ? score > otherScore : order < otherOrder;
+    }
+
+    private void set(int i, int score, int order, String title) {
+        this.heapScores[i] = score;
+        this.heapOrder[i] = order;
+        this.heapTitles[i] = title;
+    }
+
+    private void swap(int i, int j) {
+        int score = this.heapScores[i];
+        int order = this.heapOrder[i];
+        String title = this.heapTitles[i];
+        set(i, this.heapScores[j], this.heapOrder[j], this.heapTitles[j]);
+        set(j, score, order, title);
+    }
+
+    /**
+     * The heap keeps the worst of the kept matches at the root.
+     */
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!better(this.heapScores[parent], this.heapOrder[parent], this.heapScores[i], this.heapOrder[i])) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int worst = i;
+            for (int child = 2 * i + 1; child <= 2 * i + 2 && child < this.heapSize; child++) {
+                if (better(this.heapScores[worst], this.heapOrder[worst], this.heapScores[child], this.heapOrder[child])) {
+                    worst = child;
+                }
+            }
+            if (worst == i) {
+                return;
+            }
+            swap(i, worst);
+            i = worst;
+        }
+    }
+}
@@ -1,6 +1,17 @@
 import javax.swing.*;
 import javax.swing.filechooser.FileFilter;
+import java.awt.Toolkit;
+import java.awt.Window;
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -73,6 +84,8 @@ final class DocumentHelper {
         try {
             if (this.key == null) {
                 inputStream = new FileInputStream(this.fileName);
+            } else if (ChunkedVault.isChunked(this.fileName)) {
+                return ChunkedVault.open(this.fileName, this.key);
             } else {
                 inputStream = new GZIPInputStream(new CryptInputStream(new BufferedInputStream(new FileInputStream(this.fileName)), this.key));
             }
@@ -88,27 +101,48 @@ final class DocumentHelper {
     }
 
     /**
-     * Writes a document into an XML file.
+     * Writes a document into an XML file. The document is written to a temporary file in the
+     * same directory, which then replaces the file, so a failed write leaves the previous
+     * content intact.
      *
      * @param document the document
      * @throws DocumentProcessException when document format is incorrect
      * @throws IOException when I/O error occurred
      */
     public void writeDocument(final Entries document) throws DocumentProcessException, IOException {
-        OutputStream outputStream = null;
+        File target = new File(this.fileName).getAbsoluteFile();
+        File temporary = new File(target.getParentFile(), target.getName() + ".tmp");
         try {
-            if (this.key == null) {
-                outputStream = new FileOutputStream(this.fileName);
+            document.loadAll();
+            if (this.key != null && Configuration.getInstance().is("chunked.vault.enabled", false)) {
+                ChunkedVault.write(temporary.getPath(), this.key, document,
+                        Math.max(1, Configuration.getInstance().getInteger("chunked.vault.chunk.size", 256)));
             } else {
-                outputStream = new GZIPOutputStream(new CryptOutputStream(new BufferedOutputStream(new FileOutputStream(this.fileName)), this.key));
+                try (OutputStream outputStream = this.key == null ? new FileOutputStream(temporary)
+                        : new GZIPOutputStream(new CryptOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)), this.key))) {
+                    CONVERTER.write(document, outputStream);
+                }
             }
-            CONVERTER.write(document, outputStream);
+            replace(temporary, target);
         } catch (Exception e) {
+            temporary.delete();
             throw new DocumentProcessException(StringUtils.stripString(e.getMessage()));
-        } finally {
-            if (outputStream != null) {
-                outputStream.close();
-            }
+        }
+    }
+
+    /**
+     * Flushes the temporary file to the disk and moves it over the target file, atomically if
+     * the file system supports it.
+     */
+    private static void replace(final File temporary, final File target) throws IOException {
+        try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        try {
+            Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
         }
     }
 }
@@ -133,10 +167,10 @@ final class EntryHelper {
                 MessageDialog.YES_NO_OPTION);
         if (option == MessageDialog.YES_OPTION) {
             String title = (String) parent.getEntryTitleList().getSelectedValue();
-            parent.getModel().getEntries().getEntry().remove(parent.getModel().getEntryByTitle(title));
+            Entry entry = parent.getModel().getEntryByTitle(title);
             parent.getModel().setModified(true);
-            parent.refreshFrameTitle();
-            parent.refreshEntryTitleList(null);
+            parent.getModel().removeEntry(entry);
+            parent.getHistory().recordEntry("Delete Entry", entry, null);
         }
     }
 
@@ -154,10 +188,9 @@ final class EntryHelper {
         Entry oldEntry = parent.getModel().getEntryByTitle(title);
         EntryDialog ed = new EntryDialog(parent, "Duplicate Entry", oldEntry, true);
         if (ed.getFormData() != null) {
-            parent.getModel().getEntries().getEntry().add(ed.getFormData());
             parent.getModel().setModified(true);
-            parent.refreshFrameTitle();
-            parent.refreshEntryTitleList(ed.getFormData().getTitle());
+            parent.getModel().addEntry(ed.getFormData());
+            parent.getHistory().recordEntry("Duplicate Entry", null, ed.getFormData());
         }
     }
 
@@ -175,11 +208,9 @@ final class EntryHelper {
         Entry oldEntry = parent.getModel().getEntryByTitle(title);
         EntryDialog ed = new EntryDialog(parent, "Edit Entry", oldEntry, false);
         if (ed.getFormData() != null) {
-            parent.getModel().getEntries().getEntry().remove(oldEntry);
-            parent.getModel().getEntries().getEntry().add(ed.getFormData());
             parent.getModel().setModified(true);
-            parent.refreshFrameTitle();
-            parent.refreshEntryTitleList(ed.getFormData().getTitle());
+            parent.getModel().replaceEntry(oldEntry, ed.getFormData());
+            parent.getHistory().recordEntry("Edit Entry", oldEntry, ed.getFormData());
         }
     }
 
@@ -191,10 +222,31 @@ final class EntryHelper {
     static void addEntry(PasswordManagerFrame parent) {
         EntryDialog ed = new EntryDialog(parent, "Add New Entry", null, true);
         if (ed.getFormData() != null) {
-            parent.getModel().getEntries().getEntry().add(ed.getFormData());
             parent.getModel().setModified(true);
-            parent.refreshFrameTitle();
-            parent.refreshEntryTitleList(ed.getFormData().getTitle());
+            parent.getModel().addEntry(ed.getFormData());
+            parent.getHistory().recordEntry("Add Entry", null, ed.getFormData());
+        }
+    }
+
+    /**
+     * Undoes the latest modification of the entries.
+     *
+     * @param parent parent component
+     */
+    static void undo(PasswordManagerFrame parent) {
+        if (parent.getHistory().undo() == null) {
+            Toolkit.getDefaultToolkit().beep();
+        }
+    }
+
+    /**
+     * Redoes the latest undone modification of the entries.
+     *
+     * @param parent parent component
+     */
+    static void redo(PasswordManagerFrame parent) {
+        if (parent.getHistory().redo() == null) {
+            Toolkit.getDefaultToolkit().beep();
         }
     }
 
@@ -229,6 +281,13 @@ final class EntryHelper {
 
 final class FileHelper {
 
+    private static final Logger LOG = Logger.getLogger(FileHelper.class.getName());
+
+    /**
+     * Serialises the background writes, so two saves never write the same file at once.
+     */
+    private static final Object WRITE_LOCK = new Object();
+
     private FileHelper() {
         // not intended to be instantiated
     }
@@ -250,7 +309,6 @@ final class FileHelper {
                     if (result) {
                         parent.clearModel();
                         parent.getSearchPanel().setVisible(false);
-                        parent.refreshAll();
                     }
                 });
                 return;
@@ -260,7 +318,72 @@ final class FileHelper {
         }
         parent.clearModel();
         parent.getSearchPanel().setVisible(false);
-        parent.refreshAll();
+    }
+
+    /**
+     * Locks the document. The key of the document seals the entries; a document which has no
+     * password yet asks for one, unless it is locked because the user is idle.
+     *
+     * @param parent parent component
+     * @param idle {@code true} if the document is locked because the user is idle
+     */
+    static void lockFile(final PasswordManagerFrame parent, final boolean idle) {
+        if (parent.isLocked() || parent.isProcessing()) {
+            return;
+        }
+        if (idle) {
+            // an open dialog may still use the entries, the lock waits until it is closed
+            for (Window window : parent.getOwnedWindows()) {
+                if (window.isShowing()) {
+                    return;
+                }
+            }
+        }
+        if (parent.hasBackgroundTasks()) {
+            if (!idle) {
+                MessageDialog.showWarningMessage(parent, "The file is being saved, please try again when it is done.");
+            }
+            return;
+        }
+        byte[] key = parent.getModel().getPassword();
+        if (key == null) {
+            if (idle) {
+                return;
+            }
+            key = MessageDialog.showPasswordDialog(parent, true);
+            if (key == null) {
+                return;
+            }
+        }
+        try {
+            parent.getSessionLock().lock(key);
+        } catch (IOException e) {
+            MessageDialog.showErrorMessage(parent, "Cannot lock the file:\n" + StringUtils.stripString(e.getMessage()));
+            return;
+        }
+        // the history refers to the entries which have been removed from the model
+        parent.getHistory().clear();
+        parent.setLocked(true);
+    }
+
+    /**
+     * Asks for the password and unlocks the document.
+     *
+     * @param parent parent component
+     */
+    static void unlockFile(final PasswordManagerFrame parent) {
+        if (!parent.isLocked()) {
+            return;
+        }
+        byte[] key = MessageDialog.showPasswordDialog(parent, false);
+        if (key == null) {
+            return;
+        }
+        if (!parent.getSessionLock().unlock(key)) {
+            MessageDialog.showWarningMessage(parent, "Incorrect password.");
+            return;
+        }
+        parent.setLocked(false);
     }
 
     /**
@@ -279,11 +402,14 @@ final class FileHelper {
         if (checkFileOverwrite(fileName, parent)) {
             return;
         }
-        Worker worker = new Worker(parent) {
+        final Entries snapshot = parent.getModel().snapshot();
+        Worker worker = new Worker(parent, false) {
             @Override
             protected Void doInBackground() throws Exception {
                 try {
-                    DocumentHelper.newInstance(fileName).writeDocument(parent.getModel().getEntries());
+                    synchronized (WRITE_LOCK) {
+                        DocumentHelper.newInstance(fileName).writeDocument(snapshot);
+                    }
                 } catch (Throwable e) {
                     throw new Exception("An error occurred during the export operation:\n" + e.getMessage());
                 }
@@ -331,6 +457,11 @@ final class FileHelper {
      * @param parent parent component
      */
     private static void doImportFile(final String fileName, final PasswordManagerFrame parent) {
+        final DataModel model = parent.getModel();
+        final Entries previous = model.snapshot();
+        final String previousFileName = model.getFileName();
+        final byte[] previousPassword = model.getPassword();
+        final boolean previousModified = model.isModified();
         Worker worker = new Worker(parent) {
             @Override
             protected Void doInBackground() throws Exception {
@@ -345,6 +476,18 @@ final class FileHelper {
                 }
                 return null;
             }
+
+            @Override
+            protected void done() {
+                stopProcessing();
+                try {
+                    get();
+                    parent.getHistory().recordImport(previous, previousFileName, previousPassword, previousModified,
+                            model.snapshot());
+                } catch (Exception e) {
+                    showErrorMessage(e);
+                }
+            }
         };
         worker.execute();
     }
@@ -385,6 +528,12 @@ final class FileHelper {
         } else {
             fileName = parent.getModel().getFileName();
         }
+        if (parent.getModel().isOutdated(fileName)) {
+            MessageDialog.showWarningMessage(parent, "The file has been changed since it was opened from the cache.\n"
+                    + "Please save the document under another name, or reopen the file.");
+            callback.call(false);
+            return;
+        }
 
         final byte[] password;
         if (parent.getModel().getPassword() == null) {
@@ -396,14 +545,19 @@ final class FileHelper {
         } else {
             password = parent.getModel().getPassword();
         }
-        Worker worker = new Worker(parent) {
+        // the snapshot is written in the background, while the entries can still be edited;
+        // the version is read first, so a concurrent modification keeps the model modified
+        final DataModel model = parent.getModel();
+        final int version = model.getVersion();
+        final int document = model.getDocument();
+        final Entries snapshot = model.snapshot();
+        Worker worker = new Worker(parent, false) {
             @Override
             protected Void doInBackground() throws Exception {
                 try {
-                    DocumentHelper.newInstance(fileName, password).writeDocument(parent.getModel().getEntries());
-                    parent.getModel().setFileName(fileName);
-                    parent.getModel().setPassword(password);
-                    parent.getModel().setModified(false);
+                    synchronized (WRITE_LOCK) {
+                        DocumentHelper.newInstance(fileName, password).writeDocument(snapshot);
+                    }
                 } catch (Throwable e) {
                     throw new Exception("An error occurred during the save operation:\n" + e.getMessage());
                 }
@@ -412,7 +566,6 @@ final class FileHelper {
 
             @Override
             protected void done() {
-                stopProcessing();
                 boolean result = true;
                 try {
                     get();
@@ -420,12 +573,70 @@ final class FileHelper {
                     result = false;
                     showErrorMessage(e);
                 }
+                if (result) {
+                    model.markSaved(document, version, fileName, password);
+                    SnapshotCache.write(fileName, password, snapshot);
+                }
+                stopProcessing();
                 callback.call(result);
             }
         };
         worker.execute();
     }
 
+    /**
+     * Saves the document in the background without any dialog, unless its content is the same
+     * as the one saved last time. Errors are logged, the document stays modified.
+     *
+     * @param parent parent component
+     * @param savedHash content hash of the last saved content, or {@code null} if not known
+     * @param callback called with the content hash which has been saved, or with {@code null}
+     * if the save failed
+     */
+    static void autoSaveFile(final PasswordManagerFrame parent, final byte[] savedHash, final Consumer<byte[]> callback) {
+        final DataModel model = parent.getModel();
+        final String fileName = model.getFileName();
+        final byte[] password = model.getPassword();
+        final int version = model.getVersion();
+        final int document = model.getDocument();
+        final Entries snapshot = model.snapshot();
+        final byte[][] hash = {null};
+        final boolean[] written = {false};
+        Worker worker = new Worker(parent, false) {
+            @Override
+            protected Void doInBackground() throws Exception {
+                hash[0] = AutoSave.contentHash(snapshot, password);
+                if (!Arrays.equals(hash[0], savedHash)) {
+                    synchronized (WRITE_LOCK) {
+                        DocumentHelper.newInstance(fileName, password).writeDocument(snapshot);
+                    }
+                    written[0] = true;
+                }
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                boolean result = true;
+                try {
+                    get();
+                } catch (Exception e) {
+                    result = false;
+                    LOG.log(Level.WARNING, "Could not save " + fileName + " automatically.", e);
+                }
+                if (result) {
+                    model.markSaved(document, version, fileName, password);
+                    if (written[0]) {
+                        SnapshotCache.write(fileName, password, snapshot);
+                    }
+                }
+                stopProcessing();
+                callback.accept(result ? hash[0] : null);
+            }
+        };
+        worker.execute();
+    }
+
     /**
      * Shows a file chooser dialog and opens a file.
      *
@@ -456,6 +667,38 @@ final class FileHelper {
         doOpenFile(file.getPath(), parent);
     }
 
+    /**
+     * Verifies the snapshot a document has been opened from in the background. If it does not
+     * match the file, the document is opened again from the file, unless it has been modified
+     * in the meantime; then the file is marked as outdated, so neither save nor autosave
+     * overwrite it.
+     *
+     * @param parent parent component
+     * @param fileName file name
+     * @param password password of the document
+     */
+    private static void verifySnapshot(final PasswordManagerFrame parent, final String fileName,
+            final byte[] password) {
+        final DataModel model = parent.getModel();
+        final int document = model.getDocument();
+        final int version = model.getVersion();
+        SnapshotCache.verify(fileName, () -> SwingUtilities.invokeLater(() -> {
+            if (model.getDocument() != document) {
+                return;
+            }
+            if (model.getVersion() != version) {
+                // the edits are kept, but they must not overwrite the newer file
+                model.markOutdated(fileName);
+                MessageDialog.showWarningMessage(parent, "The cached copy of the file was out of date.\n"
+                        + "The file cannot be saved anymore, please save it under another name or reopen it.");
+                return;
+            }
+            // the snapshot has been deleted, the file is read this time
+            parent.clearModel();
+            loadFile(fileName, password, parent);
+        }));
+    }
+
     /**
      * Loads a file and fills the data model.
      *
@@ -471,11 +714,29 @@ final class FileHelper {
         if (password == null) {
             return;
         }
+        loadFile(fileName, password, parent);
+    }
+
+    /**
+     * Loads a file with the given password and fills the data model. The snapshot of the file is
+     * used if there is a valid one.
+     *
+     * @param fileName file name
+     * @param password password of the file
+     * @param parent parent component
+     */
+    private static void loadFile(final String fileName, final byte[] password, final PasswordManagerFrame parent) {
+        final boolean[] fromSnapshot = {false};
         Worker worker = new Worker(parent) {
             @Override
             protected Void doInBackground() throws Exception {
                 try {
-                    parent.getModel().setEntries(DocumentHelper.newInstance(fileName, password).readDocument());
+                    Entries entries = SnapshotCache.read(fileName, password);
+                    fromSnapshot[0] = entries != null;
+                    if (entries == null) {
+                        entries = DocumentHelper.newInstance(fileName, password).readDocument();
+                    }
+                    parent.getModel().setEntries(entries);
                     parent.getModel().setFileName(fileName);
                     parent.getModel().setPassword(password);
                     parent.getSearchPanel().setVisible(false);
@@ -494,6 +755,11 @@ final class FileHelper {
                 stopProcessing();
                 try {
                     get();
+                    if (fromSnapshot[0]) {
+                        verifySnapshot(parent, fileName, password);
+                    } else {
+                        SnapshotCache.write(fileName, password, parent.getModel().snapshot());
+                    }
                 } catch (Exception e) {
                     if (e.getCause() != null && e.getCause() instanceof FileNotFoundException) {
                         handleFileNotFound(parent, fileName, password);
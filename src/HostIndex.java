@@ -0,0 +1,248 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the entries by the host name of their URL. The normalised host names are stored in a
+ * trie of their labels in reverse order, so {@code mail.corp.example.com} is stored under
+ * {@code com}, {@code example}, {@code corp}, {@code mail}. Exact host, parent domain and
+ * wildcard lookups walk one node per label.
+ *
+ * @author Haikal Izzuddin
+ *
+ */
+final class HostIndex {
+
+    private static final String WILDCARD = "*.";
+
+    /**
+     * Node of the label trie.
+     */
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private final Set<Entry> entries = Collections.newSetFromMap(new IdentityHashMap<>());
+        private int count = 0;
+    }
+
+    private final Node root = new Node();
+    private final Map<Entry, String> hostOf = new IdentityHashMap<>();
+
+    /**
+     * Builds a new index from the given entries.
+     *
+     * @param entries the entries
+     * @return the index
+     */
+    static HostIndex build(List<Entry> entries) {
+        HostIndex index = new HostIndex();
+        for (Entry entry : entries) {
+            index.add(entry);
+        }
+        return index;
+    }
+
+    /**
+     * Adds an entry to the index.
+     *
+     * @param entry the entry
+     */
+    synchronized void add(Entry entry) {
+        String host = entry.urlHost();
+        if (host == null || this.hostOf.containsKey(entry)) {
+            return;
+        }
+        this.hostOf.put(entry, host);
+        Node node = this.root;
+        node.count++;
+        for (String label : reversedLabels(host)) {
+            node = node.children.computeIfAbsent(label, key -> new Node());
+            node.count++;
+        }
+        node.entries.add(entry);
+    }
+
+    /**
+     * Removes an entry from the index.
+     *
+     * @param entry the entry
+     */
+    synchronized void remove(Entry entry) {
+        String host = this.hostOf.remove(entry);
+        if (host == null) {
+            return;
+        }
+        List<Node> path = new ArrayList<>();
+        Node node = this.root;
+        path.add(node);
+        for (String label : reversedLabels(host)) {
+            node = node.children.get(label);
+            path.add(node);
+        }
+        node.entries.remove(entry);
+        String[] labels = reversedLabels(host);
+        for (int i = path.size() - 1; i >= 0; i--) {
+            Node current = path.get(i);
+            current.count--;
+            if (i > 0 && current.count == 0) {
+                path.get(i - 1).children.remove(labels[i - 1]);
+            }
+        }
+    }
+
+    /**
+     * Finds the entries of a domain. A pattern like {@code corp.example.com} matches the domain
+     * and all of its subdomains, the pattern {@code *.corp.example.com} matches the subdomains
+     * only.
+     *
+     * @param pattern the domain pattern
+     * @return the matching entries in no particular order
+     */
+    synchronized List<Entry> findDomain(String pattern) {
+        List<Entry> result = new ArrayList<>();
+        boolean wildcard = isWildcard(pattern);
+        Node node = node(hostOf(wildcard ? pattern.substring(WILDCARD.length()) : pattern));
+        if (node != null) {
+            if (!wildcard) {
+                result.addAll(node.entries);
+            }
+            for (Node child : node.children.values()) {
+                collect(child, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the entries of the given host and of its parent domains, for example the entries of
+     * {@code mail.example.com} and {@code example.com} for {@code mail.example.com}.
+     *
+     * @param host the host name, or a URL
+     * @return the matching entries, the most specific host first
+     */
+    synchronized List<Entry> findParents(String host) {
+        List<Entry> result = new ArrayList<>();
+        String normalised = hostOf(host);
+        if (normalised == null) {
+            return result;
+        }
+        Node node = this.root;
+        for (String label : reversedLabels(normalised)) {
+            node = node.children.get(label);
+            if (node == null) {
+                break;
+            }
+            result.addAll(0, node.entries);
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of entries matching the domain pattern, see {@link #findDomain(String)}.
+     *
+     * @param pattern the domain pattern
+     * @return the number of matching entries
+     */
+    synchronized int estimate(String pattern) {
+        boolean wildcard = isWildcard(pattern);
+        Node node = node(hostOf(wildcard ? pattern.substring(WILDCARD.length()) : pattern));
+        if (node == null) {
+            return 0;
+        }
+        return wildcard ? node.count - node.entries.size() : node.count;
+    }
+
+    /**
+     * Checks if the host matches the domain pattern, see {@link #findDomain(String)}.
+     *
+     * @param host normalised host name, can be null
+     * @param pattern the domain pattern
+     * @return {@code true} if the host matches
+     */
+    static boolean matches(String host, String pattern) {
+        boolean wildcard = isWildcard(pattern);
+        String domain = hostOf(wildcard ? pattern.substring(WILDCARD.length()) : pattern);
+        if (host == null || domain == null) {
+            return false;
+        }
+        return !wildcard && host.equals(domain) || host.endsWith("." + domain);
+    }
+
+    /**
+     * Gets the normalised host name of the URL: lower case, without scheme, user info, port,
+     * path and trailing dot.
+     *
+     * @param url the URL, or a plain host name
+     * @return the host name, or {@code null} if the URL has none
+     */
+    static String hostOf(String url) {
+        if (url == null) {
+            return null;
+        }
+        String host = url.trim();
+        int scheme = host.indexOf("://");
+        if (scheme >= 0) {
+            host = host.substring(scheme + 3);
+        }
+        int end = host.length();
+        for (char c : new char[] {'/', '?', '#'}) {
+            int index = host.indexOf(c);
+            if (index >= 0 && index < end) {
+                end = index;
+            }
+        }
+        host = host.substring(0, end);
+        host = host.substring(host.lastIndexOf('@') + 1);
+        if (host.startsWith("[")) {
+            // IPv6 address, kept as a single label
+            int close = host.indexOf(']');
+            host = close > 0 ? host.substring(0, close + 1) : host;
+        } else if (host.indexOf(':') >= 0) {
+            host = host.substring(0, host.indexOf(':'));
+        }
+        while (host.endsWith(".")) {
+            host = host.substring(0, host.length() - 1);
+        }
+        host = host.toLowerCase(Locale.ROOT);
+        return host.isEmpty() || host.indexOf(' ') >= 0 ? null : host;
+    }
+
+    private static boolean isWildcard(String pattern) {
+        return pattern.startsWith(WILDCARD);
+    }
+
+    private Node node(String host) {
+        if (host == null) {
+            return null;
+        }
+        Node node = this.root;
+        for (String label : reversedLabels(host)) {
+            node = node.children.get(label);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    private static void collect(Node node, List<Entry> result) {
+        result.addAll(node.entries);
+        for (Node child : node.children.values()) {
+            collect(child, result);
+        }
+    }
+
+    private static String[] reversedLabels(String host) {
+        if (host.startsWith("[")) {
+            return new String[] {host};
+        }
+        String[] labels = host.split("\\.", -1);
+        Collections.reverse(Arrays.asList(labels));
+        return labels;
+    }
+}
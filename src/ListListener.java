@@ -58,7 +58,7 @@ class ListListener extends MouseAdapter {
             return;
         }
         if (evt.isPopupTrigger()) {
-            JList list = PasswordManagerFrame.getInstance().getEntryTitleList();
+            JList<String> list = PasswordManagerFrame.getInstance().getEntryTitleList();
             if (list.isEnabled()) {
                 Point point = new Point(evt.getX(), evt.getY());
                 list.setSelectedIndex(list.locationToIndex(point));
@@ -65,7 +65,18 @@ public enum MenuActionType {
             }
         }
     }),
-    GENERATE_PASSWORD(new AbstractMenuAction("Generate Password...", getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK)) {
+    LOCK(new AbstractMenuAction("Lock", getKeyStroke(KeyEvent.VK_L, InputEvent.CTRL_DOWN_MASK)) {
+        @Override
+        public void actionPerformed(ActionEvent ev) {
+            PasswordManagerFrame parent = PasswordManagerFrame.getInstance();
+            if (parent.isLocked()) {
+                FileHelper.unlockFile(parent);
+            } else {
+                FileHelper.lockFile(parent, false);
+            }
+        }
+    }),
+    GENERATE_PASSWORD(new AbstractMenuAction("Generate Password...", getKeyStroke(KeyEvent.VK_G, InputEvent.CTRL_DOWN_MASK)) {
         @Override
         public void actionPerformed(ActionEvent ev) {
             new GeneratePasswordDialog(PasswordManagerFrame.getInstance());
@@ -88,7 +99,19 @@ public enum MenuActionType {
             MessageDialog.showInformationMessage(PasswordManagerFrame.getInstance(), sb);
         }
     }),
-    ADD_ENTRY(new AbstractMenuAction("Add Entry...", getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK)) {
+    UNDO(new AbstractMenuAction("Undo", getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK)) {
+        @Override
+        public void actionPerformed(ActionEvent ev) {
+            EntryHelper.undo(PasswordManagerFrame.getInstance());
+        }
+    }),
+    REDO(new AbstractMenuAction("Redo", getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK)) {
+        @Override
+        public void actionPerformed(ActionEvent ev) {
+            EntryHelper.redo(PasswordManagerFrame.getInstance());
+        }
+    }),
+    ADD_ENTRY(new AbstractMenuAction("Add Entry...", getKeyStroke(KeyEvent.VK_I, InputEvent.CTRL_DOWN_MASK)) {
         @Override
         public void actionPerformed(ActionEvent ev) {
             EntryHelper.addEntry(PasswordManagerFrame.getInstance());
@@ -0,0 +1,159 @@
+/**
+ * Describes one modification of the data model. An added, removed or updated entry carries its
+ * position in the sorted title list, so a subscriber can apply the change without reading the
+ * whole model. Replacing or clearing every entry, like opening or importing a file, is a single
+ * {@link Type#BULK_REPLACED} event.
+ *
+ * @author Haikal Izzuddin
+ *
+ */
+final class ModelChangeEvent {
+
+    /**
+     * Type of the modification.
+     */
+    enum Type {
+        ADDED, REMOVED, UPDATED, BULK_REPLACED
+    }
+
+    private final Type type;
+    private final Entry newEntry;
+    private final int oldIndex;
+    private final int newIndex;
+    private final int count;
+    private final int version;
+
+    private ModelChangeEvent(Type type, Entry newEntry, int oldIndex, int newIndex, int count, int version) {
+        this.type = type;
+        this.newEntry = newEntry;
+        this.oldIndex = oldIndex;
+        this.newIndex = newIndex;
+        this.count = count;
+        this.version = version;
+    }
+
+    /**
+     * Creates an event of an added entry.
+     *
+     * @param entry the new entry
+     * @param index position of the entry in the sorted title list
+     * @param count number of entries after the modification
+     * @param version version of the model after the modification
+     * @return the event
+     */
+    static ModelChangeEvent added(Entry entry, int index, int count, int version) {
+        return new ModelChangeEvent(Type.ADDED, entry, -1, index, count, version);
+    }
+
+    /**
+     * Creates an event of a removed entry.
+     *
+     * @param index position of the entry in the sorted title list before the removal
+     * @param count number of entries after the modification
+     * @param version version of the model after the modification
+     * @return the event
+     */
+    static ModelChangeEvent removed(int index, int count, int version) {
+        return new ModelChangeEvent(Type.REMOVED, null, index, -1, count, version);
+    }
+
+    /**
+     * Creates an event of an entry replaced by a new one.
+     *
+     * @param newEntry the new entry
+     * @param oldIndex position of the replaced entry before the modification
+     * @param newIndex position of the new entry after the modification
+     * @param count number of entries after the modification
+     * @param version version of the model after the modification
+     * @return the event
+     */
+    static ModelChangeEvent updated(Entry newEntry, int oldIndex, int newIndex, int count, int version) {
+        return new ModelChangeEvent(Type.UPDATED, newEntry, oldIndex, newIndex, count, version);
+    }
+
+    /**
+     * Creates an event of replacing every entry.
+     *
+     * @param count number of entries after the modification
+     * @param version version of the model after the modification
+     * @return the event
+     */
+    static ModelChangeEvent bulkReplaced(int count, int version) {
+        return new ModelChangeEvent(Type.BULK_REPLACED, null, -1, -1, count, version);
+    }
+
+    /**
+     * Gets the type of the modification.
+     *
+     * @return the type
+     */
+    Type getType() {
+        return this.type;
+    }
+
+    /**
+     * Gets the added entry.
+     *
+     * @return the new entry, or {@code null} if no entry has been added
+     */
+    Entry getNewEntry() {
+        return this.newEntry;
+    }
+
+    /**
+     * Gets the position of the old entry in the sorted title list before the modification.
+     *
+     * @return the position, or -1 if no entry has been removed
+     */
+    int getOldIndex() {
+        return this.oldIndex;
+    }
+
+    /**
+     * Gets the position of the new entry in the sorted title list after the modification.
+     *
+     * @return the position, or -1 if no entry has been added
+     */
+    int getNewIndex() {
+        return this.newIndex;
+    }
+
+    /**
+     * Gets the number of entries after the modification.
+     *
+     * @return the number of entries
+     */
+    int getCount() {
+        return this.count;
+    }
+
+    /**
+     * Gets the version of the model after the modification.
+     *
+     * @return the version
+     */
+    int getVersion() {
+        return this.version;
+    }
+
+    @Override
+    public String toString() {
+        return this.type + "@" + this.version;
+    }
+}
+
+/**
+ * Subscriber of the modifications of the data model.
+ *
+ * @author Haikal Izzuddin
+ *
+ */
+@FunctionalInterface
+interface ModelChangeListener {
+    /**
+     * Called on the event dispatch thread after the model has been modified.
+     *
+     * @param event the modification
+     */
+    void modelChanged(ModelChangeEvent event);
+}
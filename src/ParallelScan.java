@@ -0,0 +1,201 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Fork-join filter over a sequence of items, used by the searches which have to read every
+ * entry. The range is split until the parts are small enough, the parts are filtered on the
+ * common pool, and the partial results are concatenated in order, so the result has the same
+ * order as a sequential scan. Every part may also collect into its own container, and the
+ * containers are merged in order.
+ *
+ * <p>
+ * Sequences shorter than the {@code search.parallel.threshold} configuration value (default
+ * 20000) are scanned on the calling thread.
+ *
+ * @author Haikal Izzuddin
+ *
+ */
+final class ParallelScan {
+
+    /**
+     * Number of scanned items between two cancellation checks.
+     */
+    private static final int CANCEL_CHECK_INTERVAL = 1024;
+
+    /**
+     * Minimum number of items scanned by one task.
+     */
+    private static final int MIN_PART_SIZE = 4096;
+
+    /**
+     * A sequence which can be read from any position.
+     *
+     * @param <T> type of the items
+     */
+    @FunctionalInterface
+    interface Range<T> {
+        /**
+         * Performs the given action for the items between the given positions.
+         *
+         * @param from first position, inclusive
+         * @param to last position, exclusive
+         * @param action the action
+         */
+        void forEach(int from, int to, Consumer<T> action);
+    }
+
+    /**
+     * Adds an item of the sequence to a container.
+     *
+     * @param <A> type of the container
+     * @param <T> type of the items
+     */
+    @FunctionalInterface
+    interface Accumulator<A, T> {
+        /**
+         * Adds the item to the container.
+         *
+         * @param container the container of the part
+         * @param position position of the item in the sequence
+         * @param item the item
+         */
+        void accept(A container, int position, T item);
+    }
+
+    private ParallelScan() {
+        // utility class
+    }
+
+    /**
+     * Checks if a sequence of the given size is scanned in parallel.
+     *
+     * @param size size of the sequence
+     * @return {@code true} if the sequence is split
+     */
+    static boolean isParallel(int size) {
+        return size >= Configuration.getInstance().getInteger("search.parallel.threshold", 20000)
+                && ForkJoinPool.getCommonPoolParallelism() > 1;
+    }
+
+    /**
+     * Maps the items and keeps the non-null results.
+     *
+     * @param range the sequence
+     * @param size size of the sequence
+     * @param mapper the mapper, called from several threads
+     * @param cancelled cancellation check
+     * @return the non-null results in the order of the sequence
+     * @throws CancellationException if the scan has been cancelled
+     */
+    static <T, R> List<R> map(Range<T> range, int size, Function<T, R> mapper, BooleanSupplier cancelled) {
+        return collect(range, size, ArrayList::new, (result, position, item) -> {
+            R value = mapper.apply(item);
+            if (value != null) {
+                result.add(value);
+            }
+        }, List::addAll, cancelled);
+    }
+
+    /**
+     * Collects the items into a container per part, and merges the containers in order.
+     *
+     * @param range the sequence
+     * @param size size of the sequence
+     * @param supplier creates the container of a part
+     * @param accumulator adds an item to the container of its part, called from several threads
+     * @param combiner merges the container of the following part into the first one
+     * @param cancelled cancellation check
+     * @return the merged container
+     * @throws CancellationException if the scan has been cancelled
+     */
+    static <T, A> A collect(Range<T> range, int size, Supplier<A> supplier, Accumulator<A, T> accumulator,
+            BiConsumer<A, A> combiner, BooleanSupplier cancelled) {
+        if (!isParallel(size)) {
+            return scan(range, 0, size, supplier, accumulator, cancelled);
+        }
+        int partSize = Math.max(MIN_PART_SIZE, size / (ForkJoinPool.getCommonPoolParallelism() * 4));
+        return ForkJoinPool.commonPool().invoke(
+                new Part<>(range, 0, size, partSize, supplier, accumulator, combiner, cancelled));
+    }
+
+    /**
+     * Gets a range over a list.
+     *
+     * @param list the list
+     * @return the range
+     */
+    static <T> Range<T> of(List<T> list) {
+        return (from, to, action) -> {
+            for (int i = from; i < to; i++) {
+                action.accept(list.get(i));
+            }
+        };
+    }
+
+    private static <T, A> A scan(Range<T> range, int from, int to, Supplier<A> supplier,
+            Accumulator<A, T> accumulator, BooleanSupplier cancelled) {
+        A container = supplier.get();
+        int[] position = {from};
+        range.forEach(from, to, item -> {
+            int current = position[0]++;
+            if ((current - from + 1) % CANCEL_CHECK_INTERVAL == 0 && cancelled.getAsBoolean()) {
+                throw new CancellationException();
+            }
+            accumulator.accept(container, current, item);
+        });
+        return container;
+    }
+
+    /**
+     * Scans a part of the sequence, splitting it in halves while it is too large.
+     */
+    private static final class Part<T, A> extends RecursiveTask<A> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Range<T> range;
+        private final int from;
+        private final int to;
+        private final int partSize;
+        private final transient Supplier<A> supplier;
+        private final transient Accumulator<A, T> accumulator;
+        private final transient BiConsumer<A, A> combiner;
+        private final transient BooleanSupplier cancelled;
+
+        private Part(Range<T> range, int from, int to, int partSize, Supplier<A> supplier,
+                Accumulator<A, T> accumulator, BiConsumer<A, A> combiner, BooleanSupplier cancelled) {
+            this.range = range;
+            this.from = from;
+            this.to = to;
+            this.partSize = partSize;
+            this.supplier = supplier;
+            this.accumulator = accumulator;
+            this.combiner = combiner;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        protected A compute() {
+            if (this.to - this.from <= this.partSize) {
+                return scan(this.range, this.from, this.to, this.supplier, this.accumulator, this.cancelled);
+            }
+            int middle = (this.from + this.to) >>> 1;
+            Part<T, A> left = new Part<>(this.range, this.from, middle, this.partSize, this.supplier,
+                    this.accumulator, this.combiner, this.cancelled);
+            Part<T, A> right = new Part<>(this.range, middle, this.to, this.partSize, this.supplier,
+                    this.accumulator, this.combiner, this.cancelled);
+            right.fork();
+            A result = left.compute();
+            this.combiner.accept(result, right.join());
+            return result;
+        }
+    }
+}
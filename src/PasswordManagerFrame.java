@@ -1,9 +1,17 @@
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.AWTEventListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.util.List;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import static javax.swing.JOptionPane.*;
 
@@ -14,15 +22,35 @@ import static javax.swing.JOptionPane.*;
  *
  */
 final class PasswordManagerFrame extends JFrame {
+    private static final Logger LOG = Logger.getLogger(PasswordManagerFrame.class.getName());
     private static volatile PasswordManagerFrame INSTANCE;
 
     private final JPopupMenu popup;
     private final SearchPanel searchPanel;
-    private final JList entryTitleList;
-    private final DefaultListModel entryTitleListModel;
+    private final JList<String> entryTitleList;
+    private final EntryTitleListModel entryTitleListModel;
     private final DataModel model = DataModel.getInstance();
+    private final SearchEngine searchEngine = new SearchEngine(this.model);
+    private final UndoHistory history = new UndoHistory(this.model);
+    private final SessionLock sessionLock = new SessionLock(this.model);
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "passwordmanager-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Future<?> pendingSearch = null;
+    private volatile int searchGeneration = 0;
     private final StatusPanel statusPanel;
     private volatile boolean processing = false;
+    private int backgroundTasks = 0;
+    private boolean locked = false;
+    private volatile long lastActivity = System.currentTimeMillis();
+
+    /**
+     * Actions which are available while the document is locked.
+     */
+    private static final Set<MenuActionType> LOCKED_ACTIONS = EnumSet.of(MenuActionType.LOCK,
+            MenuActionType.CLEAR_CLIPBOARD, MenuActionType.ABOUT, MenuActionType.EXIT);
 
     private PasswordManagerFrame(String fileName) {
 
@@ -68,12 +96,16 @@ final class PasswordManagerFrame extends JFrame {
         fileMenu.add(MenuActionType.IMPORT_XML.getAction());
         fileMenu.addSeparator();
         fileMenu.add(MenuActionType.CHANGE_PASSWORD.getAction());
+        fileMenu.add(MenuActionType.LOCK.getAction());
         fileMenu.addSeparator();
         fileMenu.add(MenuActionType.EXIT.getAction());
         menuBar.add(fileMenu);
 
         JMenu editMenu = new JMenu("Edit");
         editMenu.setMnemonic(KeyEvent.VK_E);
+        editMenu.add(MenuActionType.UNDO.getAction());
+        editMenu.add(MenuActionType.REDO.getAction());
+        editMenu.addSeparator();
         editMenu.add(MenuActionType.ADD_ENTRY.getAction());
         editMenu.add(MenuActionType.EDIT_ENTRY.getAction());
         editMenu.add(MenuActionType.DUPLICATE_ENTRY.getAction());
@@ -109,9 +141,19 @@ final class PasswordManagerFrame extends JFrame {
         this.popup.addSeparator();
         this.popup.add(MenuActionType.FIND_ENTRY.getAction());
 
-        this.entryTitleListModel = new DefaultListModel();
-        this.entryTitleList = new JList(this.entryTitleListModel);
+        this.entryTitleListModel = new EntryTitleListModel(this.model);
+        // the list model applies the modification first, then the frame selects the entry
+        this.model.addChangeListener(this.entryTitleListModel);
+        this.model.addChangeListener(this::modelChanged);
+        if (AutoSave.isEnabled()) {
+            this.model.addChangeListener(new AutoSave(this));
+        }
+        this.entryTitleList = new JList<>(this.entryTitleListModel);
         this.entryTitleList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        // every cell has the height of a single line title, so the list never measures the heights
+        this.entryTitleList.setFixedCellHeight(this.entryTitleList.getCellRenderer()
+                .getListCellRendererComponent(this.entryTitleList, "Title", 0, false, false)
+                .getPreferredSize().height);
         this.entryTitleList.addMouseListener(new ListListener());
 
         JScrollPane scrollPane = new JScrollPane(this.entryTitleList);
@@ -132,6 +174,7 @@ final class PasswordManagerFrame extends JFrame {
         addWindowListener(new CloseListener());
         setLocationRelativeTo(null);
         setVisible(true);
+        startIdleLock();
         FileHelper.doOpenFile(fileName, this);
 
         // set focus to the list for easier keyboard navigation
@@ -158,7 +201,7 @@ final class PasswordManagerFrame extends JFrame {
      *
      * @return entry title list
      */
-    JList getEntryTitleList() {
+    JList<String> getEntryTitleList() {
         return this.entryTitleList;
     }
 
@@ -175,8 +218,95 @@ final class PasswordManagerFrame extends JFrame {
      * Clears data model.
      */
     void clearModel() {
+        this.history.clear();
         this.model.clear();
-        this.entryTitleListModel.clear();
+    }
+
+    /**
+     * Gets the lock of the document.
+     *
+     * @return the lock
+     */
+    SessionLock getSessionLock() {
+        return this.sessionLock;
+    }
+
+    /**
+     * Sets the locked state of this frame. Only the actions which do not need the entries are
+     * enabled while the document is locked.
+     *
+     * @param locked locked state
+     */
+    void setLocked(boolean locked) {
+        this.locked = locked;
+        updateActions();
+        MenuActionType.LOCK.getAction().putValue(Action.NAME, locked ? "Unlock..." : "Lock");
+        this.searchPanel.setVisible(false);
+        this.entryTitleList.setEnabled(!locked && !this.processing);
+        if (locked) {
+            this.statusPanel.setText("Locked");
+        }
+    }
+
+    /**
+     * Gets the locked state of this frame.
+     *
+     * @return locked state
+     */
+    boolean isLocked() {
+        return this.locked;
+    }
+
+    /**
+     * Locks the document after the number of idle minutes set by the {@code lock.idle.minutes}
+     * configuration value, if it is set. Any key or mouse event of the application counts as
+     * activity.
+     */
+    private void startIdleLock() {
+        final long idleMillis = Math.max(0, Configuration.getInstance().getInteger("lock.idle.minutes", 0)) * 60000L;
+        if (idleMillis == 0) {
+            return;
+        }
+        AWTEventListener activity = event -> this.lastActivity = System.currentTimeMillis();
+        Toolkit.getDefaultToolkit().addAWTEventListener(activity, AWTEvent.KEY_EVENT_MASK
+                | AWTEvent.MOUSE_EVENT_MASK | AWTEvent.MOUSE_MOTION_EVENT_MASK | AWTEvent.MOUSE_WHEEL_EVENT_MASK);
+        Timer timer = new Timer((int) Math.min(idleMillis, 10000), event -> {
+            if (!this.locked && System.currentTimeMillis() - this.lastActivity >= idleMillis) {
+                FileHelper.lockFile(this, true);
+            }
+        });
+        timer.start();
+    }
+
+    /**
+     * Gets the undo history of the entries.
+     *
+     * @return the undo history
+     */
+    UndoHistory getHistory() {
+        return this.history;
+    }
+
+    /**
+     * Updates the frame after a modification of the data model. Without a search the list
+     * model has already applied the modification; otherwise the search runs again.
+     *
+     * @param event the modification
+     */
+    private void modelChanged(ModelChangeEvent event) {
+        refreshFrameTitle();
+        String selectTitle = event.getNewEntry() == null ? null : event.getNewEntry().getTitle();
+        if (!this.searchPanel.getSearchCriteria().isEmpty()) {
+            refreshEntryTitleList(selectTitle);
+            return;
+        }
+        this.entryTitleList.clearSelection();
+        int index = this.entryTitleListModel.indexOf(selectTitle);
+        if (index != -1) {
+            this.entryTitleList.setSelectedIndex(index);
+            this.entryTitleList.ensureIndexIsVisible(index);
+        }
+        this.statusPanel.setText("Entries count: " + this.model.getEntryCount());
     }
 
     /**
@@ -189,30 +319,72 @@ final class PasswordManagerFrame extends JFrame {
     }
 
     /**
-     * Refresh the entry titles based on data model.
+     * Refresh the entry titles based on data model. Searches run in the background, the list is
+     * updated with the result of the latest search only, the obsolete ones are cancelled.
      *
      * @param selectTitle title to select, or {@code null} if nothing to select
      */
     void refreshEntryTitleList(String selectTitle) {
-        this.entryTitleListModel.clear();
-        List<String> titles = this.model.getTitles();
-        titles.sort(String.CASE_INSENSITIVE_ORDER);
-
-        String searchCriteria = this.searchPanel.getSearchCriteria();
-        for (String title : titles) {
-            if (searchCriteria.isEmpty() || title.toLowerCase().contains(searchCriteria.toLowerCase())) {
-                this.entryTitleListModel.addElement(title);
+        final int generation = ++this.searchGeneration;
+        if (this.pendingSearch != null) {
+            this.pendingSearch.cancel(true);
+            this.pendingSearch = null;
+        }
+
+        final String searchCriteria = this.searchPanel.getSearchCriteria();
+        if (searchCriteria.isEmpty()) {
+            showSearchResult(null, selectTitle);
+            return;
+        }
+        final boolean fullText = this.searchPanel.isFullTextSearch();
+        this.pendingSearch = this.searchExecutor.submit(() -> {
+            SearchResult result;
+            try {
+                result = this.searchEngine.search(searchCriteria, fullText, () -> generation != this.searchGeneration);
+            } catch (CancellationException e) {
+                return;
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "Search failed.", e);
+                return;
             }
+            SwingUtilities.invokeLater(() -> {
+                if (generation == this.searchGeneration) {
+                    showSearchResult(result, selectTitle);
+                }
+            });
+        });
+    }
+
+    /**
+     * Shows the search result in the entry title list.
+     *
+     * @param result the search result, or {@code null} to show every entry
+     * @param selectTitle title to select, or {@code null} if nothing to select
+     */
+    private void showSearchResult(SearchResult result, String selectTitle) {
+        this.entryTitleList.clearSelection();
+        if (result == null) {
+            this.entryTitleListModel.showAll();
+        } else {
+            this.entryTitleListModel.showFiltered(result.getTitles(), !result.isRanked());
         }
 
         if (selectTitle != null) {
-            this.entryTitleList.setSelectedValue(selectTitle, true);
+            int index = this.entryTitleListModel.indexOf(selectTitle);
+            if (index != -1) {
+                this.entryTitleList.setSelectedIndex(index);
+                this.entryTitleList.ensureIndexIsVisible(index);
+            }
         }
 
-        if (searchCriteria.isEmpty()) {
-            this.statusPanel.setText("Entries count: " + titles.size());
+        if (result == null) {
+            this.statusPanel.setText("Entries count: " + this.model.getEntryCount());
         } else {
-            this.statusPanel.setText("Entries found: " + this.entryTitleListModel.size() + " / " + titles.size());
+            String text = "Entries found: " + this.entryTitleListModel.getSize() + " / " + this.model.getEntryCount();
+            if (result.getExplanation() != null) {
+                text += " (" + result.getExplanation() + ")";
+            }
+            this.statusPanel.setText(text);
         }
     }
 
@@ -228,6 +400,13 @@ final class PasswordManagerFrame extends JFrame {
      * Exits the application.
      */
     void exitFrame() {
+        if (this.locked && this.model.isModified()) {
+            // the changes can only be saved from the unlocked document
+            FileHelper.unlockFile(this);
+            if (this.locked) {
+                return;
+            }
+        }
         if (Configuration.getInstance().is("clear.clipboard.on.exit.enabled", false)) {
             EntryHelper.copyEntryField(this, null);
         }
@@ -235,6 +414,10 @@ final class PasswordManagerFrame extends JFrame {
         if (this.processing) {
             return;
         }
+        if (this.backgroundTasks > 0) {
+            MessageDialog.showWarningMessage(this, "The file is being saved, please try again when it is done.");
+            return;
+        }
         if (this.model.isModified()) {
             int option = MessageDialog.showQuestionMessage(this,
                     "The current file has been modified.\nDo you want to save the changes before closing?", YES_NO_CANCEL_OPTION);
@@ -263,12 +446,44 @@ final class PasswordManagerFrame extends JFrame {
      */
     void setProcessing(boolean processing) {
         this.processing = processing;
-        for (MenuActionType actionType : MenuActionType.values()) {
-            actionType.getAction().setEnabled(!processing);
-        }
+        updateActions();
         this.searchPanel.setEnabled(!processing);
-        this.entryTitleList.setEnabled(!processing);
+        this.entryTitleList.setEnabled(!processing && !this.locked);
         this.statusPanel.setProcessing(processing);
+        if (!processing && this.backgroundTasks > 0) {
+            this.statusPanel.setBusy(true);
+        }
+    }
+
+    private void updateActions() {
+        for (MenuActionType actionType : MenuActionType.values()) {
+            actionType.getAction().setEnabled(!this.processing && (!this.locked || LOCKED_ACTIONS.contains(actionType)));
+        }
+    }
+
+    /**
+     * Registers a task running in the background, the frame stays enabled.
+     */
+    void startBackgroundTask() {
+        this.backgroundTasks++;
+        this.statusPanel.setBusy(true);
+    }
+
+    /**
+     * Unregisters a task running in the background.
+     */
+    void stopBackgroundTask() {
+        this.backgroundTasks--;
+        this.statusPanel.setBusy(this.backgroundTasks > 0 || this.processing);
+    }
+
+    /**
+     * Checks if there are tasks running in the background.
+     *
+     * @return {@code true} if a task is running in the background
+     */
+    boolean hasBackgroundTasks() {
+        return this.backgroundTasks > 0;
     }
 
     /**
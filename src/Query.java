@@ -0,0 +1,287 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Field-qualified search query, for example {@code url:github.com user:ops -tag:old}.
+ *
+ * <p>
+ * The query is a list of terms separated by whitespace, and an entry matches if it matches every
+ * term. A term is either free text, which is looked up in the title, or {@code field:value},
+ * where the field is one of {@code title}, {@code url}, {@code host}, {@code user} and
+ * {@code notes}. A leading {@code -} negates the term, and values containing spaces can be put
+ * between double quotes.
+ *
+ * <p>
+ * Title and URL terms match if the field contains the value, ignoring case. User and notes terms
+ * match whole words, the same way as the full-text search does. A host term matches the host of
+ * the URL and its subdomains, {@code host:*.example.com} the subdomains only. A URL term whose
+ * value is a domain name, like {@code url:github.com}, matches the same way as a host term, so it
+ * is looked up in the host index. A term with an
+ * unknown field matches no entry, so its negation matches every entry.
+ *
+ * @author Haikal Izzuddin
+ *
+ */
+final class Query {
+
+    /**
+     * The searchable fields.
+     */
+    enum Field {
+        TITLE, URL, HOST, USER, NOTES, UNKNOWN;
+
+        private static Field of(String name) {
+            for (Field field : values()) {
+                if (field != UNKNOWN && field.name().equalsIgnoreCase(name)) {
+                    return field;
+                }
+            }
+            return UNKNOWN;
+        }
+    }
+
+    /**
+     * A single term of the query.
+     */
+    static final class Term {
+        private final Field field;
+        private final String name;
+        private final String value;
+        private final boolean negated;
+        private final List<String> tokens;
+        private final boolean domain;
+
+        private Term(Field field, String name, String value, boolean negated) {
+            this.field = field;
+            this.name = name;
+            this.value = value;
+            this.negated = negated;
+            this.tokens = FullTextIndex.tokenize(value);
+            this.domain = field == Field.URL && isDomainName(value);
+        }
+
+        /**
+         * Gets the field of the term.
+         *
+         * @return the field
+         */
+        Field getField() {
+            return this.field;
+        }
+
+        /**
+         * Gets the value of the term.
+         *
+         * @return the value
+         */
+        String getValue() {
+            return this.value;
+        }
+
+        /**
+         * Checks if the term is negated.
+         *
+         * @return {@code true} if the matching entries are excluded
+         */
+        boolean isNegated() {
+            return this.negated;
+        }
+
+        /**
+         * Checks if the term is a URL term whose value is a domain name, which matches the host
+         * of the URL and its subdomains.
+         *
+         * @return {@code true} if the term matches by domain
+         */
+        boolean isDomain() {
+            return this.domain;
+        }
+
+        /**
+         * Gets the case folded words of the value.
+         *
+         * @return list of words
+         */
+        List<String> getTokens() {
+            return this.tokens;
+        }
+
+        /**
+         * Checks if the entry matches the term, ignoring the negation.
+         *
+         * @param entry the entry
+         * @return {@code true} if the field of the entry matches the value
+         */
+        boolean matches(Entry entry) {
+            switch (this.field) {
+            case TITLE:
+                return StringUtils.containsIgnoreCase(entry.getTitle(), this.value);
+            case URL:
+                if (this.domain) {
+                    return HostIndex.matches(entry.urlHost(), this.value);
+                }
+                return StringUtils.containsIgnoreCase(entry.getUrl(), this.value);
+            case HOST:
+                return HostIndex.matches(entry.urlHost(), this.value);
+            case USER:
+                return containsWords(entry.getUser());
+            case NOTES:
+                return containsWords(entry.getNotes());
+            default:
+                return false;
+            }
+        }
+
+        private boolean containsWords(String text) {
+            if (this.tokens.isEmpty()) {
+                return StringUtils.containsIgnoreCase(text, this.value);
+            }
+            return FullTextIndex.tokenize(text).containsAll(this.tokens);
+        }
+
+        @Override
+        public String toString() {
+            return (this.negated ? "-" : "") + this.name + ":\"" + this.value + "\"";
+        }
+    }
+
+    private final List<Term> terms;
+
+    private Query(List<Term> terms) {
+        this.terms = Collections.unmodifiableList(terms);
+    }
+
+    /**
+     * Gets the terms of the query.
+     *
+     * @return list of terms
+     */
+    List<Term> getTerms() {
+        return this.terms;
+    }
+
+    /**
+     * Checks if the entry matches every term of the query.
+     *
+     * @param entry the entry
+     * @return {@code true} if the entry matches
+     */
+    boolean matches(Entry entry) {
+        for (Term term : this.terms) {
+            if (term.matches(entry) == term.isNegated()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the value is a domain name: labels of letters, digits and hyphens, separated by
+     * dots, at least two of them.
+     */
+    private static boolean isDomainName(String value) {
+        if (value.indexOf('.') < 0 || value.startsWith(".") || value.endsWith(".") || value.contains("..")) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '-' && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the search criteria uses the query syntax, that is it contains a field-qualified
+     * or a negated term. Plain criteria are searched the usual way.
+     *
+     * @param criteria the search criteria
+     * @return {@code true} if the criteria should be parsed as a query
+     */
+    static boolean isQuery(String criteria) {
+        for (String word : split(criteria)) {
+            if (word.length() > 1 && word.charAt(0) == '-' || fieldEnd(word) > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses the search criteria.
+     *
+     * @param criteria the search criteria
+     * @return the query
+     */
+    static Query parse(String criteria) {
+        List<Term> terms = new ArrayList<>();
+        for (String word : split(criteria)) {
+            boolean negated = word.length() > 1 && word.charAt(0) == '-';
+            if (negated) {
+                word = word.substring(1);
+            }
+            int end = fieldEnd(word);
+            if (end > 0) {
+                String name = word.substring(0, end).toLowerCase(Locale.ROOT);
+                terms.add(new Term(Field.of(name), name, unquote(word.substring(end + 1)), negated));
+            } else {
+                terms.add(new Term(Field.TITLE, "title", unquote(word), negated));
+            }
+        }
+        return new Query(terms);
+    }
+
+    /**
+     * Gets the position of the colon after the field name, or -1 if the word is not qualified.
+     * The scheme of a URL, like {@code http://}, is not taken for a field name.
+     */
+    private static int fieldEnd(String word) {
+        int colon = word.indexOf(':');
+        if (colon <= 0 || colon == word.length() - 1 || word.startsWith("//", colon + 1)) {
+            return -1;
+        }
+        for (int i = 0; i < colon; i++) {
+            if (!Character.isLetter(word.charAt(i))) {
+                return -1;
+            }
+        }
+        return colon;
+    }
+
+    private static String unquote(String value) {
+        if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value.replace("\"", "");
+    }
+
+    /**
+     * Splits the criteria at whitespace outside of double quotes.
+     */
+    private static List<String> split(String criteria) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < criteria.length(); i++) {
+            char c = criteria.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            }
+            if (Character.isWhitespace(c) && !quoted) {
+                if (word.length() > 0) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                }
+            } else {
+                word.append(c);
+            }
+        }
+        if (word.length() > 0) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+}
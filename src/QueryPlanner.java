@@ -0,0 +1,110 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs field-qualified queries. The planner estimates for every term how many candidates the
+ * matching index would return, takes the candidates of the most selective one, and checks only
+ * those against the whole query. If no index applies, or none is more selective than reading
+ * every entry, the entries are scanned.
+ *
+ * @author Haikal Izzuddin
+ *
+ */
+final class QueryPlanner {
+
+    /**
+     * A way of getting the candidates of a query.
+     */
+    private interface Plan {
+        /**
+         * Gets the candidate entries.
+         *
+         * @return the candidates, or {@code null} to scan every entry
+         */
+        List<Entry> candidates();
+    }
+
+    private final DataModel model;
+
+    /**
+     * Creates a planner over the given data model.
+     *
+     * @param model the data model
+     */
+    QueryPlanner(DataModel model) {
+        this.model = model;
+    }
+
+    /**
+     * Runs the query.
+     *
+     * @param query the query
+     * @param cancelled cancellation check
+     * @return matching titles in title order, with the explanation of the plan
+     * @throws CancellationException if the search has been cancelled
+     */
+    SearchResult execute(Query query, BooleanSupplier cancelled) {
+        int count = this.model.getEntryCount();
+        Plan plan = () -> null;
+        String description = "full scan";
+        int best = count;
+
+        FullTextIndex fullTextIndex = this.model.getFullTextIndex();
+        HostIndex hostIndex = this.model.getHostIndex();
+        for (Query.Term term : query.getTerms()) {
+            if (term.isNegated()) {
+                continue;
+            }
+            int estimate = -1;
+            Plan candidate = null;
+            String name = null;
+            switch (term.getField()) {
+            case UNKNOWN:
+                estimate = 0;
+                candidate = ArrayList::new;
+                name = "unknown field";
+                break;
+            case TITLE:
+                estimate = this.model.estimateTitlesContaining(term.getValue());
+                candidate = () -> this.model.findTitlesContaining(term.getValue());
+                name = "title trigram index";
+                break;
+            case URL:
+            case HOST:
+                if (hostIndex != null && (term.getField() == Query.Field.HOST || term.isDomain())) {
+                    estimate = hostIndex.estimate(term.getValue());
+                    candidate = () -> hostIndex.findDomain(term.getValue());
+                    name = "host index";
+                }
+                break;
+            case USER:
+            case NOTES:
+                if (fullTextIndex != null && !term.getTokens().isEmpty()) {
+                    estimate = fullTextIndex.estimate(term.getTokens());
+                    candidate = () -> fullTextIndex.find(term.getTokens());
+                    name = "token index";
+                }
+                break;
+            default:
+                break;
+            }
+            if (estimate >= 0 && estimate < best) {
+                best = estimate;
+                plan = candidate;
+                description = name + " on " + term;
+            }
+        }
+
+        List<Entry> candidates = plan.candidates();
+        if (candidates == null) {
+            candidates = this.model.getEntries().getEntry();
+        }
+        int examined = candidates.size();
+        List<String> titles = ParallelScan.map(ParallelScan.of(candidates), examined,
+                entry -> query.matches(entry) ? entry.getTitle() : null, cancelled);
+        titles.sort(SortedTitleIndex.ORDER);
+        return new SearchResult(titles, false, description + ", " + examined + " examined");
+    }
+}
@@ -0,0 +1,338 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * Finds the entry titles matching the search criteria. Queries of at least three characters are
+ * answered from the title trigram index of the data model when it is selective, shorter and
+ * broad ones scan the titles in title order, in parallel for large vaults (see
+ * {@link ParallelScan}). The optional full-text mode searches the user name, URL and notes fields instead.
+ *
+ * <p>
+ * By default titles are matched as substrings, the {@code search.mode} configuration key set to
+ * {@code fuzzy} switches to fuzzy matching. Fuzzy results list the best
+ * {@code search.fuzzy.max.results} matches (default 500) first, ranked, and the other matches
+ * after them in title order, so no match is hidden.
+ *
+ * <p>
+ * Searches run on a background thread and take a cancellation check, which is polled while the
+ * titles are scanned; a cancelled search throws {@link CancellationException}.
+ *
+ * <p>
+ * The engine remembers the candidates of the last search. If the next query refines it, for
+ * example "git" is extended to "gith", only those candidates are checked again. Recent results
+ * are kept in a small LRU cache, so going back to a previous query is instant. Both are dropped
+ * when the entries change.
+ *
+ * <p>
+ * Criteria with a field-qualified or negated term, like {@code url:github.com -user:ops}, are
+ * parsed as a {@link Query} and run by the {@link QueryPlanner}.
+ *
+ * @author Haikal Izzuddin
+ *
+ */
+final class SearchEngine {
+
+    private static final String SUBSTRING_MODE = "substring";
+    private static final String FUZZY_MODE = "fuzzy";
+    private static final String FULL_TEXT_MODE = "full-text";
+    private static final String QUERY_MODE = "query";
+
+    /**
+     * A finished search.
+     */
+    private static final class CachedSearch {
+        private final int version;
+        private final String mode;
+        private final String criteria;
+        private final List<String> candidates;
+        private final SearchResult result;
+
+        private CachedSearch(int version, String mode, String criteria, List<String> candidates, SearchResult result) {
+            this.version = version;
+            this.mode = mode;
+            this.criteria = criteria;
+            this.candidates = candidates;
+            this.result = result;
+        }
+    }
+
+    private final DataModel model;
+    private final QueryPlanner planner;
+    private final Map<String, CachedSearch> recent;
+    private CachedSearch last = null;
+
+    /**
+     * Creates a search engine over the given data model.
+     *
+     * @param model the data model
+     */
+    SearchEngine(DataModel model) {
+        this.model = model;
+        this.planner = new QueryPlanner(model);
+        final int cacheSize = Math.max(0, Configuration.getInstance().getInteger("search.cache.size", 16));
+        this.recent = new LinkedHashMap<String, CachedSearch>(cacheSize + 1, 1.0f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedSearch> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Checks if the titles are matched fuzzily.
+     *
+     * @return {@code true} in fuzzy mode, {@code false} in exact substring mode
+     */
+    boolean isFuzzySearch() {
+        return FUZZY_MODE.equalsIgnoreCase(Configuration.getInstance().get("search.mode", SUBSTRING_MODE));
+    }
+
+    /**
+     * Runs a search in the configured mode, reusing the previous results where possible.
+     *
+     * @param criteria the search criteria, non empty
+     * @param fullText whether user name, URL and notes are searched instead of the titles
+     * @param cancelled returns {@code true} when the search is not needed anymore
+     * @return the search result
+     * @throws CancellationException if the search has been cancelled
+     */
+    synchronized SearchResult search(String criteria, boolean fullText, BooleanSupplier cancelled) {
+        String mode = Query.isQuery(criteria) ? QUERY_MODE
+                : fullText ? FULL_TEXT_MODE : isFuzzySearch() ? FUZZY_MODE : SUBSTRING_MODE;
+        int version = this.model.getVersion();
+        String key = mode + '\n' + criteria;
+        CachedSearch cached = this.recent.get(key);
+        if (cached == null || cached.version != version) {
+            List<String> previous = null;
+            if (this.last != null && this.last.version == version && this.last.mode.equals(mode)
+                    && refines(mode, criteria, this.last.criteria)) {
+                previous = this.last.candidates;
+            }
+            cached = run(mode, criteria, previous, version, cancelled);
+            this.recent.put(key, cached);
+        }
+        this.last = cached;
+        return cached.result;
+    }
+
+    private CachedSearch run(String mode, String criteria, List<String> previous, int version, BooleanSupplier cancelled) {
+        if (QUERY_MODE.equals(mode)) {
+            SearchResult result = this.planner.execute(Query.parse(criteria), cancelled);
+            return new CachedSearch(version, mode, criteria, result.getTitles(), result);
+        }
+        if (FULL_TEXT_MODE.equals(mode)) {
+            List<String> titles = searchFullText(criteria);
+            return new CachedSearch(version, mode, criteria, titles, new SearchResult(titles, true));
+        }
+        if (FUZZY_MODE.equals(mode)) {
+            List<String> candidates = new ArrayList<>();
+            List<String> titles = searchFuzzy(criteria, previous, candidates, cancelled);
+            return new CachedSearch(version, mode, criteria, candidates, new SearchResult(titles, true));
+        }
+        List<String> titles = searchSubstring(criteria, previous, cancelled);
+        return new CachedSearch(version, mode, criteria, titles, new SearchResult(titles, false));
+    }
+
+    /**
+     * Checks if every title matching the new criteria also matches the old criteria.
+     */
+    private static boolean refines(String mode, String criteria, String oldCriteria) {
+        String query = DataModel.foldTitle(criteria);
+        String oldQuery = DataModel.foldTitle(oldCriteria);
+        if (SUBSTRING_MODE.equals(mode)) {
+            return query.contains(oldQuery);
+        }
+        if (FUZZY_MODE.equals(mode)) {
+            int i = 0;
+            for (int j = 0; j < query.length() && i < oldQuery.length(); j++) {
+                if (query.charAt(j) == oldQuery.charAt(i)) {
+                    i++;
+                }
+            }
+            return i == oldQuery.length();
+        }
+        return false;
+    }
+
+    /**
+     * Finds the titles which contain the characters of the search criteria in the same order,
+     * ignoring case.
+     *
+     * @param criteria the search criteria, non empty
+     * @param previous candidates of a broader query in title order, or {@code null} to scan
+     * every title
+     * @param candidates receives every matching title in title order
+     * @param cancelled cancellation check
+     * @return every matching title, the best matches first, ranked, and the others in title
+     * order
+     */
+    List<String> searchFuzzy(String criteria, List<String> previous, List<String> candidates, BooleanSupplier cancelled) {
+        int limit = Configuration.getInstance().getInteger("search.fuzzy.max.results", 500);
+        List<String> titles = previous != null ? previous : this.model.getSortedTitles();
+        // every part scores into its own matcher, the titles are in title order, so the
+        // position breaks the ties in favour of the earlier title
+        FuzzyMatcher matcher = ParallelScan.collect(ParallelScan.of(titles), titles.size(),
+                () -> new FuzzyMatcher(criteria, limit), (part, position, title) -> {
+                    if (title != null) {
+                        part.accept(position, title);
+                    }
+                }, FuzzyMatcher::merge, cancelled);
+        List<String> matches = matcher.getMatches();
+        List<String> ranked = matcher.getResults();
+        candidates.addAll(matches);
+        if (ranked.size() == matches.size()) {
+            return ranked;
+        }
+        // the matches beyond the ranked ones follow in title order
+        Map<String, Integer> shown = new HashMap<>();
+        for (String title : ranked) {
+            shown.merge(title, 1, Integer::sum);
+        }
+        List<String> result = new ArrayList<>(matches.size());
+        result.addAll(ranked);
+        for (String title : matches) {
+            Integer count = shown.get(title);
+            if (count == null) {
+                result.add(title);
+            } else if (count == 1) {
+                shown.remove(title);
+            } else {
+                shown.put(title, count - 1);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the titles which contain the search criteria, ignoring case.
+     *
+     * @param criteria the search criteria, non empty
+     * @param previous matching titles of a broader query in title order, or {@code null} to use
+     * the index
+     * @param cancelled cancellation check
+     * @return matching titles in title order
+     */
+    List<String> searchSubstring(String criteria, List<String> previous, BooleanSupplier cancelled) {
+        if (previous == null && isSelective(criteria)) {
+            List<Entry> candidates = this.model.findTitlesContaining(criteria);
+            if (candidates != null) {
+                // the index returns few entries in no particular order, only they are sorted
+                List<String> titles = new ArrayList<>(candidates.size());
+                for (Entry entry : candidates) {
+                    titles.add(entry.getTitle());
+                }
+                titles.sort(SortedTitleIndex.ORDER);
+                return titles;
+            }
+        }
+        return scan(previous, title -> StringUtils.containsIgnoreCase(title, criteria) ? title : null, cancelled);
+    }
+
+    /**
+     * Checks if the trigram index narrows the text down to a small part of the entries. A broad
+     * query is answered by a scan in title order instead, which saves sorting most of the vault.
+     */
+    private boolean isSelective(String criteria) {
+        int estimate = this.model.estimateTitlesContaining(criteria);
+        return estimate >= 0 && estimate <= this.model.getEntryCount() / 8;
+    }
+
+    /**
+     * Maps the candidates of the previous search, or every title, and keeps the non-null
+     * results. Both are scanned in title order, and the parts of a parallel scan are
+     * concatenated in order, so the results are in title order without sorting.
+     */
+    private <R> List<R> scan(List<String> previous, Function<String, R> mapper, BooleanSupplier cancelled) {
+        List<String> titles = previous != null ? previous : this.model.getSortedTitles();
+        return ParallelScan.map(ParallelScan.of(titles), titles.size(),
+                title -> title == null ? null : mapper.apply(title), cancelled);
+    }
+
+    /**
+     * Finds the titles of the entries whose user name, URL or notes contain every token of the
+     * search criteria. Until the full-text index is built, the entries are scanned.
+     *
+     * @param criteria the search criteria, non empty
+     * @return matching titles, best match first
+     */
+    List<String> searchFullText(String criteria) {
+        FullTextIndex index = this.model.getFullTextIndex();
+        if (index == null) {
+            index = FullTextIndex.build(this.model.getEntries().getEntry());
+        }
+        List<String> titles = new ArrayList<>();
+        for (Entry entry : index.search(criteria)) {
+            titles.add(entry.getTitle());
+        }
+        return titles;
+    }
+}
+
+/**
+ * Result of a search.
+ */
+final class SearchResult {
+
+    private final List<String> titles;
+    private final boolean ranked;
+    private final String explanation;
+
+    /**
+     * Creates a search result.
+     *
+     * @param titles the matching titles
+     * @param ranked whether the titles are ranked, or in title order otherwise
+     */
+    SearchResult(List<String> titles, boolean ranked) {
+        this(titles, ranked, null);
+    }
+
+    /**
+     * Creates a search result of a planned query.
+     *
+     * @param titles the matching titles
+     * @param ranked whether the titles are ranked, or in title order otherwise
+     * @param explanation the plan of the query and the number of examined candidates
+     */
+    SearchResult(List<String> titles, boolean ranked, String explanation) {
+        this.titles = titles;
+        this.ranked = ranked;
+        this.explanation = explanation;
+    }
+
+    /**
+     * Gets the matching titles.
+     *
+     * @return list of titles
+     */
+    List<String> getTitles() {
+        return this.titles;
+    }
+
+    /**
+     * Checks if the titles are ranked.
+     *
+     * @return {@code true} if the best match comes first, {@code false} if the titles are in
+     * title order
+     */
+    boolean isRanked() {
+        return this.ranked;
+    }
+
+    /**
+     * Gets the explanation of the query plan.
+     *
+     * @return the explanation, or {@code null} if the search was not planned
+     */
+    String getExplanation() {
+        return this.explanation;
+    }
+}
@@ -24,8 +24,10 @@ class SearchPanel extends JPanel implements ActionListener {
 
     private final JLabel label;
     private final JTextField criteriaField;
+    private final JCheckBox fullTextBox;
     private final JButton closeButton;
     private final Callback callback;
+    private final Timer debounceTimer;
 
     /**
      * Creates a new search panel with the given callback object.
@@ -42,25 +44,38 @@ class SearchPanel extends JPanel implements ActionListener {
 
         this.criteriaField = TextComponentFactory.newTextField();
 
+        // fast typing restarts the timer, so the callback is called once typing pauses
+        this.debounceTimer = new Timer(Math.max(0, Configuration.getInstance().getInteger("search.debounce.millis", 150)),
+                e -> callback.call(isEnabled()));
+        this.debounceTimer.setRepeats(false);
+
         if (this.callback != null) {
             this.criteriaField.getDocument().addDocumentListener(new DocumentListener() {
                 @Override
                 public void changedUpdate(DocumentEvent e) {
-                    callback.call(isEnabled());
+                    debounceTimer.restart();
                 }
 
                 @Override
                 public void insertUpdate(DocumentEvent e) {
-                    callback.call(isEnabled());
+                    debounceTimer.restart();
                 }
 
                 @Override
                 public void removeUpdate(DocumentEvent e) {
-                    callback.call(isEnabled());
+                    debounceTimer.restart();
                 }
             });
         }
 
+        this.fullTextBox = new JCheckBox("All fields");
+        this.fullTextBox.setToolTipText("Search in user name, URL and notes");
+        this.fullTextBox.setFocusable(false);
+        this.fullTextBox.setVisible(DataModel.isFullTextSearchEnabled());
+        if (this.callback != null) {
+            this.fullTextBox.addActionListener(e -> callback.call(isEnabled()));
+        }
+
         this.closeButton = new JButton();
         this.closeButton.setBorder(new EmptyBorder(0, 2, 0, 2));
         this.closeButton.setActionCommand(CLOSE_BUTTON_ACTION_COMMAND);
@@ -80,7 +95,10 @@ class SearchPanel extends JPanel implements ActionListener {
 
         add(this.label, BorderLayout.WEST);
         add(this.criteriaField, BorderLayout.CENTER);
-        add(this.closeButton, BorderLayout.EAST);
+        JPanel buttonPanel = new JPanel(new BorderLayout());
+        buttonPanel.add(this.fullTextBox, BorderLayout.WEST);
+        buttonPanel.add(this.closeButton, BorderLayout.EAST);
+        add(buttonPanel, BorderLayout.EAST);
 
         this.setVisible(false);
     }
@@ -100,6 +118,7 @@ class SearchPanel extends JPanel implements ActionListener {
         super.setEnabled(enabled);
         this.label.setEnabled(enabled);
         this.criteriaField.setEnabled(enabled);
+        this.fullTextBox.setEnabled(enabled);
         this.closeButton.setEnabled(enabled);
     }
 
@@ -111,6 +130,15 @@ class SearchPanel extends JPanel implements ActionListener {
         }
     }
 
+    /**
+     * Checks if the full-text search mode is selected.
+     *
+     * @return {@code true} if user name, URL and notes are searched instead of the titles
+     */
+    boolean isFullTextSearch() {
+        return this.fullTextBox.isVisible() && this.fullTextBox.isSelected();
+    }
+
     /**
      * Get search criteria.
      *
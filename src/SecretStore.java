@@ -0,0 +1,602 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the secret fields of the entries encrypted in memory. The values are appended to an
+ * arena of large byte arrays, encrypted with AES-256 in counter mode under a random session key,
+ * and referenced by a {@code long} handle. The position of the value in the arena is the nonce,
+ * so no IV or padding is stored; a record is a length and the cipher text. Equal values are
+ * stored once: a seeded hash table finds the candidates, which are compared after decryption.
+ *
+ * <p>
+ * Values are decrypted into {@code char[]} arrays. A tiny cache keeps the values decrypted in
+ * the last {@code secret.cache.millis} milliseconds (default 2000), at most
+ * {@code secret.cache.size} of them (default 16); expired values are wiped.
+ *
+ * <p>
+ * The arena only grows, values are never freed, as snapshots and the undo history may still
+ * refer to them. Opening the same document again adds nothing, every value is already stored.
+ * Locking the document resets the store: the arena, the spill file and the session key are
+ * wiped, and a new store with a new session key takes over. The handles carry the generation of
+ * their store, a handle of a previous store is rejected instead of reading another value.
+ *
+ * <p>
+ * If the {@code memory.budget.megabytes} configuration value is set, the arena keeps at most
+ * that many bytes of blocks in the heap, the least recently used full blocks are spilled to a
+ * temporary file and read back on access. The blocks are written as they are, encrypted under
+ * the session key, which never leaves the process, so the file cannot be read after the
+ * session. The titles, the URLs and the indexes of the entries stay in the heap.
+ *
+ * @author Haikal Izzuddin
+ *
+ */
+final class SecretStore {
+
+    /**
+     * Handle of the {@code null} value.
+     */
+    static final long NONE = 0;
+
+    private static final int ARENA_BLOCK_SIZE = 64 * 1024;
+    private static final int CIPHER_BLOCK_SIZE = 16;
+
+    /**
+     * The generation of the store is kept in the bits 48 to 62 of a handle, the block index in
+     * the bits 32 to 47 and the offset in the block in the low bits.
+     */
+    private static final int GENERATION_SHIFT = 48;
+    private static final long GENERATION_MASK = 0x7fffL << GENERATION_SHIFT;
+    private static final int MAX_BLOCKS = 0x10000;
+    private static final AtomicInteger GENERATIONS = new AtomicInteger();
+
+    private static final Logger LOG = Logger.getLogger(SecretStore.class.getName());
+
+    private static volatile SecretStore INSTANCE;
+
+    private final byte[] sessionKey;
+    private final long seed;
+    private final long generation;
+    private final ThreadLocal<Aes256> ciphers;
+
+    /**
+     * Every cipher of the session key, so they can be wiped with it.
+     */
+    private final List<Aes256> allCiphers = new ArrayList<>();
+    private volatile boolean wiped = false;
+
+    private byte[][] blocks = new byte[16][];
+    private int blockCount = 0;
+    private int blockUsed = ARENA_BLOCK_SIZE;
+
+    /**
+     * Maximum size of the blocks in the heap, or 0 to keep every block in the heap.
+     */
+    private final long residentLimit;
+    private long residentSize = 0;
+
+    /**
+     * The full blocks in the heap, least recently used first.
+     */
+    private final Map<Integer, Integer> residentBlocks = new LinkedHashMap<>(16, 0.75f, true);
+    private int[] blockLengths = new int[16];
+    private long[] spillOffsets = new long[16];
+    private File spillPath = null;
+    private RandomAccessFile spillFile = null;
+    private long spillSize = 0;
+
+    private long[] hashes = new long[1024];
+    private long[] handles = new long[1024];
+    private int distinct = 0;
+
+    private final int cacheSize;
+    private final long cacheMillis;
+    private final Map<Long, CachedValue> cache;
+    private final ScheduledExecutorService wiper;
+    private boolean wipeScheduled = false;
+
+    /**
+     * A decrypted value and the time it has to be wiped at.
+     */
+    private static final class CachedValue {
+        private final char[] value;
+        private final long expires;
+
+        private CachedValue(char[] value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+    private SecretStore() {
+        Random random = CryptUtils.newRandomNumberGenerator();
+        this.sessionKey = new byte[32];
+        random.nextBytes(this.sessionKey);
+        this.seed = random.nextLong();
+        this.generation = (long) (GENERATIONS.getAndIncrement() % 0x7fff + 1) << GENERATION_SHIFT;
+        this.ciphers = ThreadLocal.withInitial(() -> {
+            Aes256 cipher = new Aes256(this.sessionKey);
+            synchronized (this.allCiphers) {
+                this.allCiphers.add(cipher);
+            }
+            return cipher;
+        });
+        this.cacheSize = Math.max(0, Configuration.getInstance().getInteger("secret.cache.size", 16));
+        this.cacheMillis = Math.max(0, Configuration.getInstance().getInteger("secret.cache.millis", 2000));
+        this.residentLimit = Math.max(0, Configuration.getInstance().getInteger("memory.budget.megabytes", 0)) * 1024L * 1024L;
+        this.cache = new LinkedHashMap<Long, CachedValue>(this.cacheSize + 1, 1.0f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CachedValue> eldest) {
+                if (size() > SecretStore.this.cacheSize) {
+                    Arrays.fill(eldest.getValue().value, '\0');
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.wiper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "passwordmanager-secret-wiper");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Gets the SecretStore singleton instance.
+     *
+     * @return instance of the SecretStore
+     */
+    static SecretStore getInstance() {
+        if (INSTANCE == null) {
+            synchronized (SecretStore.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new SecretStore();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Wipes the arena, the spill file and the session key of the current store, and replaces it
+     * with a new one. Every handle issued so far becomes invalid, so the store is only reset
+     * when nothing refers to its values anymore, like when the document is locked.
+     */
+    static void reset() {
+        synchronized (SecretStore.class) {
+            SecretStore old = INSTANCE;
+            INSTANCE = new SecretStore();
+            if (old != null) {
+                old.wipe();
+            }
+        }
+    }
+
+    /**
+     * Encrypts the given value with the session key, or finds it if it is already stored.
+     *
+     * @param value the plain value, can be null
+     * @return handle of the value, or {@link #NONE} if the value is {@code null}
+     */
+    long seal(final String value) {
+        if (value == null) {
+            return NONE;
+        }
+        byte[] plain = value.getBytes(StandardCharsets.UTF_8);
+        try {
+            return seal(plain);
+        } finally {
+            Arrays.fill(plain, (byte) 0);
+        }
+    }
+
+    /**
+     * Encrypts the given UTF-8 value with the session key, or finds it if it is already stored.
+     * The array is not modified, the caller should wipe it.
+     *
+     * @param plain the plain value in UTF-8
+     * @return handle of the value
+     */
+    long seal(final byte[] plain) {
+        long hash = hash(plain);
+        synchronized (this) {
+            checkNotWiped();
+            int mask = this.hashes.length - 1;
+            for (int i = (int) hash & mask; this.hashes[i] != 0; i = (i + 1) & mask) {
+                if (this.hashes[i] == hash && matches(this.handles[i], plain)) {
+                    return this.handles[i];
+                }
+            }
+            long handle = append(plain);
+            insert(hash, handle);
+            return handle;
+        }
+    }
+
+    /**
+     * Decrypts the given value into a new UTF-8 array. The caller should wipe the array when it
+     * is done with it. The cache is not used.
+     *
+     * @param handle handle of the value
+     * @return the plain value in UTF-8, or {@code null} if the handle is {@link #NONE}
+     */
+    byte[] openBytes(final long handle) {
+        return handle == NONE ? null : decrypt(handle);
+    }
+
+    /**
+     * Decrypts the given value into a new string.
+     *
+     * @param handle handle of the value
+     * @return the plain value, or {@code null} if the handle is {@link #NONE}
+     */
+    String open(final long handle) {
+        char[] chars = openChars(handle);
+        if (chars == null) {
+            return null;
+        }
+        try {
+            return new String(chars);
+        } finally {
+            Arrays.fill(chars, '\0');
+        }
+    }
+
+    /**
+     * Decrypts the given value, or copies it from the cache if it was decrypted recently. The
+     * caller should wipe the array when it is done with it.
+     *
+     * @param handle handle of the value
+     * @return the plain value, or {@code null} if the handle is {@link #NONE}
+     */
+    char[] openChars(final long handle) {
+        if (handle == NONE) {
+            return null;
+        }
+        synchronized (this.cache) {
+            CachedValue cached = this.cache.get(handle);
+            if (cached != null && cached.expires > System.currentTimeMillis()) {
+                return cached.value.clone();
+            }
+        }
+        byte[] plain = decrypt(handle);
+        char[] chars;
+        try {
+            CharBuffer decoded = StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(plain));
+            chars = Arrays.copyOfRange(decoded.array(), decoded.arrayOffset(), decoded.arrayOffset() + decoded.limit());
+            Arrays.fill(decoded.array(), '\0');
+        } catch (CharacterCodingException e) {
+            throw new IllegalStateException("Cannot decrypt entry field.", e);
+        } finally {
+            Arrays.fill(plain, (byte) 0);
+        }
+        if (this.cacheSize > 0 && this.cacheMillis > 0) {
+            synchronized (this.cache) {
+                CachedValue old = this.cache.put(handle,
+                        new CachedValue(chars.clone(), System.currentTimeMillis() + this.cacheMillis));
+                if (old != null) {
+                    Arrays.fill(old.value, '\0');
+                }
+                if (!this.wipeScheduled) {
+                    this.wipeScheduled = true;
+                    this.wiper.schedule(this::wipeExpired, this.cacheMillis, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+        return chars;
+    }
+
+    /**
+     * Drops and wipes all decrypted values from the cache.
+     */
+    void clearCache() {
+        synchronized (this.cache) {
+            for (CachedValue cached : this.cache.values()) {
+                Arrays.fill(cached.value, '\0');
+            }
+            this.cache.clear();
+        }
+    }
+
+    /**
+     * Wipes the values, the session key and its ciphers, and deletes the spill file. A thread
+     * which still uses this store gets an {@link IllegalStateException}.
+     */
+    private synchronized void wipe() {
+        this.wiped = true;
+        this.wiper.shutdownNow();
+        clearCache();
+        for (int i = 0; i < this.blockCount; i++) {
+            if (this.blocks[i] != null) {
+                Arrays.fill(this.blocks[i], (byte) 0);
+                this.blocks[i] = null;
+            }
+        }
+        this.blockCount = 0;
+        this.residentBlocks.clear();
+        this.residentSize = 0;
+        Arrays.fill(this.hashes, 0);
+        Arrays.fill(this.handles, 0);
+        this.distinct = 0;
+        Arrays.fill(this.sessionKey, (byte) 0);
+        synchronized (this.allCiphers) {
+            for (Aes256 cipher : this.allCiphers) {
+                cipher.clear();
+            }
+            this.allCiphers.clear();
+        }
+        if (this.spillFile != null) {
+            try {
+                this.spillFile.close();
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Could not close the spill file.", e);
+            }
+            if (!this.spillPath.delete()) {
+                LOG.log(Level.WARNING, "Could not delete the spill file " + this.spillPath + ".");
+            }
+            this.spillFile = null;
+        }
+    }
+
+    private void checkNotWiped() {
+        if (this.wiped) {
+            throw new IllegalStateException("The secret store has been reset.");
+        }
+    }
+
+    private void wipeExpired() {
+        synchronized (this.cache) {
+            long now = System.currentTimeMillis();
+            long next = Long.MAX_VALUE;
+            for (Iterator<CachedValue> it = this.cache.values().iterator(); it.hasNext();) {
+                CachedValue cached = it.next();
+                if (cached.expires <= now) {
+                    Arrays.fill(cached.value, '\0');
+                    it.remove();
+                } else {
+                    next = Math.min(next, cached.expires);
+                }
+            }
+            this.wipeScheduled = !this.cache.isEmpty();
+            if (this.wipeScheduled) {
+                this.wiper.schedule(this::wipeExpired, Math.max(1, next - now), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Appends the encrypted value to the arena. A record never spans two blocks.
+     */
+    private long append(byte[] plain) {
+        int size = lengthSize(plain.length) + plain.length;
+        if (this.blockUsed + size > ARENA_BLOCK_SIZE) {
+            if (this.blockCount == MAX_BLOCKS) {
+                throw new IllegalStateException("The secret store is full.");
+            }
+            if (this.blockCount == this.blocks.length) {
+                this.blocks = Arrays.copyOf(this.blocks, this.blockCount * 2);
+                this.blockLengths = Arrays.copyOf(this.blockLengths, this.blockCount * 2);
+                this.spillOffsets = Arrays.copyOf(this.spillOffsets, this.blockCount * 2);
+            }
+            if (this.blockCount > 0) {
+                // the previous block is full, it can be spilled from now on
+                this.residentBlocks.put(this.blockCount - 1, this.blockCount - 1);
+            }
+            int length = Math.max(ARENA_BLOCK_SIZE, size);
+            this.blocks[this.blockCount] = new byte[length];
+            this.blockLengths[this.blockCount] = length;
+            this.spillOffsets[this.blockCount] = -1;
+            this.blockCount++;
+            this.blockUsed = 0;
+            this.residentSize += length;
+            evict();
+        }
+        byte[] block = this.blocks[this.blockCount - 1];
+        long handle = (this.generation | (long) (this.blockCount - 1) << 32 | this.blockUsed) + 1;
+        int offset = writeLength(block, this.blockUsed, plain.length);
+        System.arraycopy(plain, 0, block, offset, plain.length);
+        crypt(handle, block, offset, plain.length);
+        this.blockUsed += size;
+        return handle;
+    }
+
+    /**
+     * Copies the encrypted value out of the arena, and decrypts it outside of the lock.
+     */
+    private byte[] decrypt(long handle) {
+        byte[] data;
+        synchronized (this) {
+            checkNotWiped();
+            int index = (int) ((handle - 1) >>> 32) & (MAX_BLOCKS - 1);
+            if (((handle - 1) & GENERATION_MASK) != this.generation || index >= this.blockCount) {
+                throw new IllegalStateException("The entry field belongs to a previous session.");
+            }
+            byte[] block = block(index);
+            int start = (int) (handle - 1);
+            int length = readLength(block, start);
+            int offset = start + lengthSize(length);
+            data = Arrays.copyOfRange(block, offset, offset + length);
+        }
+        crypt(handle, data, 0, data.length);
+        if (this.wiped) {
+            // the cipher may have been wiped while it was used
+            Arrays.fill(data, (byte) 0);
+            checkNotWiped();
+        }
+        return data;
+    }
+
+    /**
+     * Gets a block of the arena, reading it from the spill file if it is not in the heap.
+     */
+    private byte[] block(int index) {
+        byte[] block = this.blocks[index];
+        if (block != null) {
+            this.residentBlocks.get(index);
+            return block;
+        }
+        block = new byte[this.blockLengths[index]];
+        try {
+            this.spillFile.seek(this.spillOffsets[index]);
+            this.spillFile.readFully(block);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read the spilled entry fields.", e);
+        }
+        this.blocks[index] = block;
+        this.residentSize += block.length;
+        this.residentBlocks.put(index, index);
+        // the caller holds the block, even if it is evicted again right away
+        evict();
+        return block;
+    }
+
+    /**
+     * Spills the least recently used full blocks while the heap budget is exceeded. A block is
+     * written once, it never changes after it is full.
+     */
+    private void evict() {
+        if (this.residentLimit == 0 || this.residentSize <= this.residentLimit) {
+            return;
+        }
+        try {
+            if (this.spillFile == null) {
+                File file = File.createTempFile("passwordmanager", ".spill");
+                file.deleteOnExit();
+                this.spillFile = new RandomAccessFile(file, "rw");
+                this.spillPath = file;
+            }
+            Iterator<Integer> it = this.residentBlocks.keySet().iterator();
+            while (this.residentSize > this.residentLimit && it.hasNext()) {
+                int index = it.next();
+                if (this.spillOffsets[index] < 0) {
+                    this.spillFile.seek(this.spillSize);
+                    this.spillFile.write(this.blocks[index]);
+                    this.spillOffsets[index] = this.spillSize;
+                    this.spillSize += this.blockLengths[index];
+                }
+                this.blocks[index] = null;
+                this.residentSize -= this.blockLengths[index];
+                it.remove();
+            }
+        } catch (IOException e) {
+            // the blocks which could not be written stay in the heap
+            LOG.log(Level.WARNING, "Could not spill entry fields to disk.", e);
+        }
+    }
+
+    private boolean matches(long handle, byte[] plain) {
+        byte[] stored = decrypt(handle);
+        try {
+            return Arrays.equals(stored, plain);
+        } finally {
+            Arrays.fill(stored, (byte) 0);
+        }
+    }
+
+    /**
+     * Encrypts or decrypts in counter mode, the counter block is the handle and the block index.
+     */
+    private void crypt(long handle, byte[] data, int offset, int length) {
+        Aes256 cipher = this.ciphers.get();
+        byte[] counter = new byte[CIPHER_BLOCK_SIZE];
+        byte[] stream = new byte[CIPHER_BLOCK_SIZE];
+        for (int i = 0; i < 8; i++) {
+            counter[i] = (byte) (handle >>> (56 - 8 * i));
+        }
+        for (int done = 0, blockIndex = 0; done < length; blockIndex++) {
+            for (int i = 0; i < 4; i++) {
+                counter[12 + i] = (byte) (blockIndex >>> (24 - 8 * i));
+            }
+            cipher.encrypt(counter, 0, stream, 0);
+            for (int i = 0; i < CIPHER_BLOCK_SIZE && done < length; i++, done++) {
+                data[offset + done] ^= stream[i];
+            }
+        }
+        Arrays.fill(stream, (byte) 0);
+    }
+
+    private void insert(long hash, long handle) {
+        if (2 * (this.distinct + 1) > this.hashes.length) {
+            long[] oldHashes = this.hashes;
+            long[] oldHandles = this.handles;
+            this.hashes = new long[oldHashes.length * 2];
+            this.handles = new long[oldHashes.length * 2];
+            for (int i = 0; i < oldHashes.length; i++) {
+                if (oldHashes[i] != 0) {
+                    put(oldHashes[i], oldHandles[i]);
+                }
+            }
+        }
+        put(hash, handle);
+        this.distinct++;
+    }
+
+    private void put(long hash, long handle) {
+        int mask = this.hashes.length - 1;
+        int i = (int) hash & mask;
+        while (this.hashes[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        this.hashes[i] = hash;
+        this.handles[i] = handle;
+    }
+
+    /**
+     * Hashes the value with the seed of the session, never returns 0, which marks a free slot.
+     */
+    private long hash(byte[] plain) {
+        long h = this.seed;
+        for (byte b : plain) {
+            h = (h ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    private static int lengthSize(int length) {
+        return length < 0x80 ? 1 : length < 0x4000 ? 2 : length < 0x200000 ? 3 : length < 0x10000000 ? 4 : 5;
+    }
+
+    private static int writeLength(byte[] block, int offset, int length) {
+        int value = length;
+        while (value >= 0x80) {
+            block[offset++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        block[offset++] = (byte) value;
+        return offset;
+    }
+
+    private static int readLength(byte[] block, int offset) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = block[offset++];
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+}
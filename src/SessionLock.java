@@ -0,0 +1,254 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lock of the document which is open in the data model. Locking seals the entries into a blob,
+ * encrypted in memory with the key of the lock, and removes them from the model. Unlocking
+ * only needs the key: the blob is decrypted and the entries are put back, the file is not read
+ * again.
+ *
+ * <p>
+ * The user names, passwords and notes are decrypted from the secret store and sealed in the
+ * blob with the other fields, then the secret store is reset, which wipes its arena and its
+ * session key. While the document is locked, nothing in memory can be read without the key of
+ * the lock. Unlocking seals the values in the new secret store again.
+ *
+ * <pre>
+ * counter    16 bytes, random initial counter block
+ * body       AES-256/CTR(magic "PMLOCK01", entry count, entries)
+ * </pre>
+ *
+ * <p>
+ * The body is encrypted while it is written, so the plain values are never collected in a
+ * buffer. A wrong key is detected by the magic, from the first cipher block. The file name and
+ * the modified state of the document are kept while it is locked, the key is wiped.
+ *
+ * @author Haikal Izzuddin
+ *
+ */
+final class SessionLock {
+
+    private static final byte[] MAGIC = "PMLOCK01".getBytes(StandardCharsets.US_ASCII);
+    private static final int BLOCK_SIZE = 16;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final DataModel model;
+    private byte[] sealed = null;
+    private boolean documentKey = false;
+
+    /**
+     * Creates the lock of the given data model.
+     *
+     * @param model the data model
+     */
+    SessionLock(DataModel model) {
+        this.model = model;
+    }
+
+    /**
+     * Checks if the document is locked.
+     *
+     * @return {@code true} if the document is locked
+     */
+    boolean isLocked() {
+        return this.sealed != null;
+    }
+
+    /**
+     * Locks the document. The entries are sealed with the given key, which is the key of the
+     * document, or a key chosen for the lock if the document has no password yet. The given key
+     * and the key of the document are wiped once the document is locked.
+     *
+     * @param key the key of the lock
+     * @throws IOException if the entries cannot be sealed
+     */
+    void lock(byte[] key) throws IOException {
+        if (isLocked()) {
+            return;
+        }
+        List<Entry> entries = this.model.snapshot().getEntry();
+        ByteArrayOutputStream blob = new ByteArrayOutputStream(64 + entries.size() * 128);
+        byte[] counter = new byte[BLOCK_SIZE];
+        RANDOM.nextBytes(counter);
+        blob.write(counter);
+        try (DataOutputStream out = new DataOutputStream(new CtrOutputStream(blob, new Ctr(new Aes256(key), counter)))) {
+            out.write(MAGIC);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                entry.writePlain(out);
+            }
+        }
+        byte[] password = this.model.getPassword();
+        this.sealed = blob.toByteArray();
+        this.documentKey = MessageDigest.isEqual(key, password);
+        this.model.setPassword(null);
+        this.model.setEntries(new Entries());
+        // the entries are gone, the values they referred to are wiped with the session key
+        SecretStore.reset();
+        if (password != null) {
+            Arrays.fill(password, (byte) 0);
+        }
+        Arrays.fill(key, (byte) 0);
+    }
+
+    /**
+     * Unlocks the document. The key becomes the key of the document again if it was the key of
+     * the document when it was locked, otherwise it is wiped.
+     *
+     * @param key the key of the lock
+     * @return {@code true} if the document has been unlocked, {@code false} if the key is wrong
+     */
+    boolean unlock(byte[] key) {
+        if (!isLocked()) {
+            return true;
+        }
+        Aes256 cipher = new Aes256(key);
+        List<Entry> entries;
+        try {
+            byte[] counter = Arrays.copyOf(this.sealed, BLOCK_SIZE);
+            byte[] first = Arrays.copyOfRange(this.sealed, BLOCK_SIZE, 2 * BLOCK_SIZE);
+            new Ctr(cipher, counter).crypt(first, 0, first.length);
+            boolean matches = Arrays.equals(MAGIC, 0, MAGIC.length, first, 0, MAGIC.length);
+            Arrays.fill(first, (byte) 0);
+            if (!matches) {
+                Arrays.fill(key, (byte) 0);
+                return false;
+            }
+            byte[] data = Arrays.copyOfRange(this.sealed, BLOCK_SIZE, this.sealed.length);
+            new Ctr(cipher, counter).crypt(data, 0, data.length);
+            try (DataInputStream in = new DataInputStream(
+                    new ByteArrayInputStream(data, MAGIC.length, data.length - MAGIC.length))) {
+                int count = in.readInt();
+                if (count < 0) {
+                    throw new IOException("Invalid entry count: " + count + ".");
+                }
+                entries = new ArrayList<>(Math.min(count, 1 << 16));
+                for (int i = 0; i < count; i++) {
+                    entries.add(Entry.readPlain(in));
+                }
+            } catch (IOException e) {
+                Arrays.fill(key, (byte) 0);
+                return false;
+            } finally {
+                Arrays.fill(data, (byte) 0);
+            }
+        } finally {
+            cipher.clear();
+        }
+        this.sealed = null;
+        this.model.setEntries(Entries.of(entries));
+        if (this.documentKey) {
+            this.model.setPassword(key);
+        } else {
+            Arrays.fill(key, (byte) 0);
+        }
+        return true;
+    }
+
+    /**
+     * Key stream of the counter mode, the counter block is incremented as a big-endian number
+     * from the initial one.
+     */
+    private static final class Ctr {
+        private final Aes256 cipher;
+        private final byte[] counter;
+        private final byte[] stream = new byte[BLOCK_SIZE];
+        private int used = BLOCK_SIZE;
+
+        private Ctr(Aes256 cipher, byte[] initial) {
+            this.cipher = cipher;
+            this.counter = initial.clone();
+        }
+
+        /**
+         * Encrypts or decrypts the data in place, continuing the key stream.
+         */
+        private void crypt(byte[] data, int offset, int length) {
+            for (int i = 0; i < length; i++) {
+                if (this.used == BLOCK_SIZE) {
+                    this.cipher.encrypt(this.counter, 0, this.stream, 0);
+                    for (int j = BLOCK_SIZE - 1; j >= 0 && ++this.counter[j] == 0; j--) {
+                        // carry
+                    }
+                    this.used = 0;
+                }
+                data[offset + i] ^= this.stream[this.used++];
+            }
+        }
+
+        private void clear() {
+            this.cipher.clear();
+            Arrays.fill(this.stream, (byte) 0);
+        }
+    }
+
+    /**
+     * Encrypts the written bytes in counter mode. The plain bytes are buffered in a small array
+     * which is wiped when the stream is closed, only the cipher text reaches the target.
+     */
+    private static final class CtrOutputStream extends FilterOutputStream {
+        private final Ctr ctr;
+        private final byte[] buffer = new byte[4096];
+        private int count = 0;
+
+        private CtrOutputStream(OutputStream out, Ctr ctr) {
+            super(out);
+            this.ctr = ctr;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (this.count == this.buffer.length) {
+                flushBuffer();
+            }
+            this.buffer[this.count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (this.count == this.buffer.length) {
+                    flushBuffer();
+                }
+                int n = Math.min(len, this.buffer.length - this.count);
+                System.arraycopy(b, off, this.buffer, this.count, n);
+                this.count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushBuffer();
+            this.out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                Arrays.fill(this.buffer, (byte) 0);
+                this.ctr.clear();
+            }
+        }
+
+        private void flushBuffer() throws IOException {
+            this.ctr.crypt(this.buffer, 0, this.count);
+            this.out.write(this.buffer, 0, this.count);
+            this.count = 0;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local cache of the documents in a binary form, which is much faster to read than the
+ * compressed XML. A snapshot is written after a document has been opened or saved, and used by
+ * the next open of the same file if the size and the modification time of the file have not
+ * changed. The content hash of the file is then verified in the background.
+ *
+ * <pre>
+ * magic      8 bytes, "PMSNAP01"
+ * size       8 bytes, size of the document file
+ * modified   8 bytes, modification time of the document file
+ * hash       32 bytes, SHA-256 of the document file
+ * body       IV + AES-256/CBC(GZIP(entry count, entries in title order))
+ * </pre>
+ *
+ * <p>
+ * The body is encrypted with the key of the document. The entries are stored in title order,
+ * so sorting them for the sorted title index takes linear time. The indexes themselves are not
+ * stored, they are rebuilt from the entries like for a document read from its file. Snapshots are kept in the directory set
+ * by the {@code snapshot.cache.directory} configuration value (default
+ * {@code ~/.passwordmanager/cache}), if {@code snapshot.cache.enabled} is set.
+ *
+ * @author Haikal Izzuddin
+ *
+ */
+final class SnapshotCache {
+
+    private static final Logger LOG = Logger.getLogger(SnapshotCache.class.getName());
+
+    private static final byte[] MAGIC = "PMSNAP01".getBytes(StandardCharsets.US_ASCII);
+    private static final int HASH_SIZE = 32;
+
+    /**
+     * Maximum length of a string in bytes, larger lengths come from a damaged stream.
+     */
+    static final int MAX_STRING_LENGTH = 16 * 1024 * 1024;
+
+    /**
+     * Size of the first buffer of a string, it doubles as the bytes are read.
+     */
+    private static final int READ_BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * Background thread for writing and verifying the snapshots.
+     */
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "passwordmanager-snapshot-cache");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private SnapshotCache() {
+        // utility class
+    }
+
+    /**
+     * Checks if the snapshot cache is enabled in the configuration.
+     *
+     * @return {@code true} if snapshots are written and read
+     */
+    static boolean isEnabled() {
+        return Configuration.getInstance().is("snapshot.cache.enabled", false);
+    }
+
+    /**
+     * Reads the snapshot of the given document, if there is one matching the size and the
+     * modification time of the file.
+     *
+     * @param fileName file name of the document
+     * @param key key of the document
+     * @return the entries of the document, or {@code null} if there is no usable snapshot
+     */
+    static Entries read(final String fileName, final byte[] key) {
+        if (!isEnabled() || key == null) {
+            return null;
+        }
+        File source = new File(fileName);
+        File snapshot = snapshotFile(fileName);
+        if (!source.isFile() || !snapshot.isFile()) {
+            return null;
+        }
+        try (DataInputStream file = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)))) {
+            byte[] header = new byte[MAGIC.length];
+            file.readFully(header);
+            if (!Arrays.equals(MAGIC, header) || file.readLong() != source.length()
+                    || file.readLong() != source.lastModified()) {
+                return null;
+            }
+            // the hash is verified in the background, readFully fails on a truncated header
+            file.readFully(new byte[HASH_SIZE]);
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(new CryptInputStream(file, key))))) {
+                return Entries.of(readEntries(in));
+            }
+        } catch (IOException | RuntimeException e) {
+            // a snapshot of another key, or a damaged one, the document is read instead
+            LOG.log(Level.FINE, "Could not read the snapshot of " + fileName + ".", e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the snapshot of the given document in the background. Does nothing for chunked
+     * vaults, which are opened without reading the entries anyway.
+     *
+     * @param fileName file name of the document, which has been written already
+     * @param key key of the document
+     * @param document the entries of the document, a snapshot which is not modified
+     */
+    static void write(final String fileName, final byte[] key, final Entries document) {
+        if (!isEnabled() || key == null) {
+            return;
+        }
+        // the key of the document is wiped when it is locked, the task keeps its own copy
+        final byte[] snapshotKey = key.clone();
+        EXECUTOR.execute(() -> {
+            File snapshot = snapshotFile(fileName);
+            try {
+                if (ChunkedVault.isChunked(fileName)) {
+                    return;
+                }
+                File source = new File(fileName);
+                long size = source.length();
+                long modified = source.lastModified();
+                byte[] hash = hash(source);
+
+                List<Entry> entries = new ArrayList<>(document.getEntry());
+                entries.sort((a, b) -> SortedTitleIndex.ORDER.compare(a.getTitle(), b.getTitle()));
+                File directory = snapshot.getParentFile();
+                if (!directory.isDirectory() && !directory.mkdirs()) {
+                    throw new IOException("Cannot create " + directory + ".");
+                }
+                File temporary = new File(directory, snapshot.getName() + ".tmp");
+                try (DataOutputStream file = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+                    file.write(MAGIC);
+                    file.writeLong(size);
+                    file.writeLong(modified);
+                    file.write(hash);
+                    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                            new GZIPOutputStream(new CryptOutputStream(file, snapshotKey))))) {
+                        writeEntries(out, entries);
+                    }
+                }
+                // the document may have been saved again while the snapshot was written
+                if (source.length() != size || source.lastModified() != modified) {
+                    temporary.delete();
+                    return;
+                }
+                Files.move(temporary.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException | RuntimeException e) {
+                LOG.log(Level.WARNING, "Could not write the snapshot of " + fileName + ".", e);
+                snapshot.delete();
+            } finally {
+                Arrays.fill(snapshotKey, (byte) 0);
+            }
+        });
+    }
+
+    /**
+     * Compares the content hash recorded in the snapshot with the hash of the document file in
+     * the background. If they differ, the snapshot is deleted and the callback is called on the
+     * background thread.
+     *
+     * @param fileName file name of the document
+     * @param mismatch called if the snapshot does not match the file
+     */
+    static void verify(final String fileName, final Runnable mismatch) {
+        EXECUTOR.execute(() -> {
+            File snapshot = snapshotFile(fileName);
+            boolean matches;
+            try (DataInputStream file = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)))) {
+                file.readFully(new byte[MAGIC.length + 16]);
+                byte[] recorded = new byte[HASH_SIZE];
+                file.readFully(recorded);
+                matches = MessageDigest.isEqual(recorded, hash(new File(fileName)));
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Could not verify the snapshot of " + fileName + ".", e);
+                matches = false;
+            }
+            if (!matches) {
+                snapshot.delete();
+                mismatch.run();
+            }
+        });
+    }
+
+    /**
+     * Gets the snapshot file of a document, named after the hash of its path, so the cache
+     * directory does not reveal the document names.
+     */
+    private static File snapshotFile(String fileName) {
+        String directory = Configuration.getInstance().get("snapshot.cache.directory",
+                System.getProperty("user.home") + File.separator + ".passwordmanager" + File.separator + "cache");
+        String path;
+        try {
+            path = new File(fileName).getCanonicalPath();
+        } catch (IOException e) {
+            path = new File(fileName).getAbsolutePath();
+        }
+        StringBuilder name = new StringBuilder();
+        for (byte b : sha256().digest(path.getBytes(StandardCharsets.UTF_8))) {
+            name.append(String.format("%02x", b));
+        }
+        return new File(directory, name.append(".snapshot").toString());
+    }
+
+    private static byte[] hash(File file) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes the entries in the binary form of the snapshots: the entry count, then the id,
+     * title, url, user, password and notes of each entry.
+     *
+     * @param out the stream
+     * @param entries the entries
+     * @throws IOException if the entries cannot be written
+     */
+    private static void writeEntries(DataOutputStream out, List<Entry> entries) throws IOException {
+        out.writeInt(entries.size());
+        for (Entry entry : entries) {
+            writeString(out, entry.getId());
+            writeString(out, entry.getTitle());
+            writeString(out, entry.getUrl());
+            writeString(out, entry.getUser());
+            writeString(out, entry.getPassword());
+            writeString(out, entry.getNotes());
+        }
+    }
+
+    /**
+     * Reads entries written by {@link #writeEntries(DataOutputStream, List)}.
+     *
+     * @param in the stream
+     * @return the entries
+     * @throws IOException if the entries cannot be read
+     */
+    private static List<Entry> readEntries(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid entry count: " + count + ".");
+        }
+        // the count is not trusted for the capacity, the stream may be damaged
+        List<Entry> list = new ArrayList<>(Math.min(count, 1 << 16));
+        for (int i = 0; i < count; i++) {
+            Entry entry = new Entry();
+            entry.setId(readString(in));
+            entry.setTitle(readString(in));
+            entry.setUrl(readString(in));
+            entry.setUser(readString(in));
+            entry.setPassword(readString(in));
+            entry.setNotes(readString(in));
+            list.add(entry);
+        }
+        return list;
+    }
+
+    /**
+     * Writes a string as its UTF-8 length and bytes, a {@code null} string as length -1.
+     *
+     * @param out the stream
+     * @param value the string, may be {@code null}
+     * @throws IOException if the string cannot be written
+     */
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString(DataOutputStream, String)}. The length is
+     * not trusted, the stream may be damaged: lengths above {@link #MAX_STRING_LENGTH} are
+     * rejected, and the buffer grows with the bytes actually read, so a stream which ends early
+     * fails before a large buffer is allocated.
+     *
+     * @param in the stream
+     * @return the string, may be {@code null}
+     * @throws IOException if the string cannot be read or its length is invalid
+     */
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > MAX_STRING_LENGTH) {
+            throw new IOException("Invalid string length: " + length + ".");
+        }
+        byte[] bytes = new byte[Math.min(length, READ_BLOCK_SIZE)];
+        in.readFully(bytes);
+        while (bytes.length < length) {
+            int read = bytes.length;
+            bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * read));
+            in.readFully(bytes, read, bytes.length - read);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
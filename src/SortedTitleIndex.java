@@ -0,0 +1,275 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Entries ordered by title, case insensitively. The index is a treap whose nodes know the size of
+ * their subtree, so adding and removing an entry, and getting the entry at a given position all
+ * take O(log n) expected time.
+ *
+ * @author Haikal Izzuddin
+ *
+ */
+final class SortedTitleIndex {
+
+    /**
+     * Order of the titles. Titles which only differ in case are ordered by their natural order.
+     */
+    static final Comparator<String> ORDER = String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder());
+
+    private static final class Node {
+        private final Entry entry;
+        private final String title;
+        private final int priority;
+        private Node left;
+        private Node right;
+        private int size = 1;
+
+        private Node(Entry entry, int priority) {
+            this.entry = entry;
+            this.title = entry.getTitle() == null ? "" : entry.getTitle();
+            this.priority = priority;
+        }
+    }
+
+    private final Random random = new Random();
+    private Node root;
+    private boolean removed;
+
+    /**
+     * Gets the number of entries in the index.
+     *
+     * @return number of entries
+     */
+    int size() {
+        return size(this.root);
+    }
+
+    /**
+     * Removes all entries from the index.
+     */
+    void clear() {
+        this.root = null;
+    }
+
+    /**
+     * Replaces the content of the index with the given entries in O(n log n) time.
+     *
+     * @param entries the entries
+     */
+    void reset(List<Entry> entries) {
+        List<Node> nodes = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            nodes.add(new Node(entry, this.random.nextInt()));
+        }
+        nodes.sort((a, b) -> ORDER.compare(a.title, b.title));
+
+        // builds the treap from the sorted nodes with the right spine on a stack
+        Deque<Node> spine = new ArrayDeque<>();
+        for (Node node : nodes) {
+            Node last = null;
+            while (!spine.isEmpty() && spine.peek().priority < node.priority) {
+                last = spine.pop();
+                update(last);
+            }
+            node.left = last;
+            if (!spine.isEmpty()) {
+                spine.peek().right = node;
+            }
+            spine.push(node);
+        }
+        Node top = null;
+        while (!spine.isEmpty()) {
+            top = spine.pop();
+            update(top);
+        }
+        this.root = top;
+    }
+
+    /**
+     * Adds an entry to the index.
+     *
+     * @param entry the entry
+     */
+    void add(Entry entry) {
+        this.root = insert(this.root, new Node(entry, this.random.nextInt()));
+    }
+
+    /**
+     * Removes an entry from the index.
+     *
+     * @param entry the entry
+     * @return {@code true} if the entry was in the index
+     */
+    boolean remove(Entry entry) {
+        this.removed = false;
+        this.root = remove(this.root, entry.getTitle() == null ? "" : entry.getTitle(), entry);
+        return this.removed;
+    }
+
+    /**
+     * Gets the entry at the given position.
+     *
+     * @param index position in title order
+     * @return the entry
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    Entry get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        Node node = this.root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index > leftSize) {
+                index -= leftSize + 1;
+                node = node.right;
+            } else {
+                return node.entry;
+            }
+        }
+    }
+
+    /**
+     * Gets the position of the given title.
+     *
+     * @param title the title
+     * @return position of the title, or -1 if there is no entry with the title
+     */
+    int indexOf(String title) {
+        if (title == null) {
+            return -1;
+        }
+        int rank = 0;
+        int found = -1;
+        Node node = this.root;
+        while (node != null) {
+            int c = ORDER.compare(title, node.title);
+            if (c <= 0) {
+                if (c == 0) {
+                    found = rank + size(node.left);
+                }
+                node = node.left;
+            } else {
+                rank += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Performs the given action for each entry in title order.
+     *
+     * @param action the action
+     */
+    void forEach(Consumer<Entry> action) {
+        Deque<Node> stack = new ArrayDeque<>();
+        Node node = this.root;
+        while (node != null || !stack.isEmpty()) {
+            while (node != null) {
+                stack.push(node);
+                node = node.left;
+            }
+            node = stack.pop();
+            action.accept(node.entry);
+            node = node.right;
+        }
+    }
+
+    private Node insert(Node node, Node newNode) {
+        if (node == null) {
+            return newNode;
+        }
+        if (newNode.priority > node.priority) {
+            split(node, newNode.title, newNode);
+            update(newNode);
+            return newNode;
+        }
+        if (ORDER.compare(newNode.title, node.title) < 0) {
+            node.left = insert(node.left, newNode);
+        } else {
+            node.right = insert(node.right, newNode);
+        }
+        update(node);
+        return node;
+    }
+
+    /**
+     * Splits the subtree into the nodes ordered before the title and the rest, and stores them
+     * as the children of the target node.
+     */
+    private void split(Node node, String title, Node target) {
+        if (node == null) {
+            target.left = null;
+            target.right = null;
+            return;
+        }
+        if (ORDER.compare(node.title, title) < 0) {
+            split(node.right, title, target);
+            node.right = target.left;
+            update(node);
+            target.left = node;
+        } else {
+            split(node.left, title, target);
+            node.left = target.right;
+            update(node);
+            target.right = node;
+        }
+    }
+
+    private Node remove(Node node, String title, Entry entry) {
+        if (node == null) {
+            return null;
+        }
+        int c = ORDER.compare(title, node.title);
+        if (c == 0 && node.entry == entry) {
+            this.removed = true;
+            return merge(node.left, node.right);
+        }
+        if (c < 0) {
+            node.left = remove(node.left, title, entry);
+        } else if (c > 0) {
+            node.right = remove(node.right, title, entry);
+        } else {
+            // equal titles may be on both sides of the node
+            node.left = remove(node.left, title, entry);
+            if (!this.removed) {
+                node.right = remove(node.right, title, entry);
+            }
+        }
+        update(node);
+        return node;
+    }
+
+    private Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            update(left);
+            return left;
+        }
+        right.left = merge(left, right.left);
+        update(right);
+        return right;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static void update(Node node) {
+        node.size = 1 + size(node.left) + size(node.right);
+    }
+}
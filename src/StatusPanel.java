@@ -36,6 +36,16 @@ class StatusPanel extends JPanel {
         return this.label.getText();
     }
 
+    /**
+     * Shows or hides the progress indicator without changing the text.
+     *
+     * @param busy whether a background task is running
+     */
+    public void setBusy(boolean busy) {
+        this.progressBar.setVisible(busy);
+        this.progressBar.setIndeterminate(busy);
+    }
+
     public void setProcessing(boolean processing) {
         this.progressBar.setVisible(processing);
         this.progressBar.setIndeterminate(processing);
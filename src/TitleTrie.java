@@ -0,0 +1,302 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact prefix trie over the case folded entry titles. Edges are labelled with strings, so a
+ * chain of single child nodes is stored as one node. Looking up a title or a prefix takes time
+ * proportional to its length, independent of the number of entries.
+ *
+ * <p>
+ * Imported documents may contain titles which only differ in case. They share a node, and
+ * {@link #get(String)} picks the one whose title is exactly the given one.
+ *
+ * @author Haikal Izzuddin
+ *
+ */
+final class TitleTrie {
+
+    /**
+     * Node of the trie, the children are sorted by the first character of their label.
+     */
+    private static final class Node {
+        private String label;
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private List<Entry> entries = null;
+
+        private Node(String label) {
+            this.label = label;
+        }
+
+        private int find(char key) {
+            return Arrays.binarySearch(this.keys, key);
+        }
+
+        private Node child(char key) {
+            int index = find(key);
+            return index < 0 ? null : this.children[index];
+        }
+
+        private void put(Node child) {
+            char key = child.label.charAt(0);
+            int index = find(key);
+            if (index >= 0) {
+                this.children[index] = child;
+                return;
+            }
+            index = -index - 1;
+            int size = this.keys.length;
+            this.keys = Arrays.copyOf(this.keys, size + 1);
+            this.children = Arrays.copyOf(this.children, size + 1);
+            System.arraycopy(this.keys, index, this.keys, index + 1, size - index);
+            System.arraycopy(this.children, index, this.children, index + 1, size - index);
+            this.keys[index] = key;
+            this.children[index] = child;
+        }
+
+        private void delete(char key) {
+            int index = find(key);
+            int size = this.keys.length;
+            char[] keys = new char[size - 1];
+            Node[] children = new Node[size - 1];
+            System.arraycopy(this.keys, 0, keys, 0, index);
+            System.arraycopy(this.children, 0, children, 0, index);
+            System.arraycopy(this.keys, index + 1, keys, index, size - index - 1);
+            System.arraycopy(this.children, index + 1, children, index, size - index - 1);
+            this.keys = keys;
+            this.children = children;
+        }
+
+        private boolean hasEntries() {
+            return this.entries != null && !this.entries.isEmpty();
+        }
+    }
+
+    private Node root = new Node("");
+    private int size = 0;
+
+    /**
+     * Gets the number of titles in the trie.
+     *
+     * @return the number of titles
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Removes all entries from the trie.
+     */
+    void clear() {
+        this.root = new Node("");
+        this.size = 0;
+    }
+
+    /**
+     * Replaces the content of the trie with the given entries.
+     *
+     * @param list the entries
+     */
+    void reset(List<Entry> list) {
+        clear();
+        for (Entry entry : list) {
+            add(entry);
+        }
+    }
+
+    /**
+     * Adds an entry to the trie.
+     *
+     * @param entry the entry
+     */
+    void add(Entry entry) {
+        if (entry.getTitle() == null) {
+            return;
+        }
+        String key = DataModel.foldTitle(entry.getTitle());
+        Node node = this.root;
+        int i = 0;
+        while (i < key.length()) {
+            Node child = node.child(key.charAt(i));
+            if (child == null) {
+                child = new Node(key.substring(i));
+                node.put(child);
+                node = child;
+                break;
+            }
+            int common = commonPrefix(child.label, key, i);
+            if (common < child.label.length()) {
+                Node middle = new Node(child.label.substring(0, common));
+                child.label = child.label.substring(common);
+                middle.put(child);
+                node.put(middle);
+                child = middle;
+            }
+            node = child;
+            i += common;
+        }
+        if (node.entries == null) {
+            node.entries = new ArrayList<>(1);
+        }
+        node.entries.add(entry);
+        this.size++;
+    }
+
+    /**
+     * Removes an entry from the trie.
+     *
+     * @param entry the entry
+     */
+    void remove(Entry entry) {
+        if (entry.getTitle() == null) {
+            return;
+        }
+        String key = DataModel.foldTitle(entry.getTitle());
+        Node parent = null;
+        Node node = this.root;
+        int i = 0;
+        while (i < key.length()) {
+            Node child = node.child(key.charAt(i));
+            if (child == null || !key.startsWith(child.label, i)) {
+                return;
+            }
+            parent = node;
+            node = child;
+            i += child.label.length();
+        }
+        if (node.entries == null || !removeIdentical(node.entries, entry)) {
+            return;
+        }
+        this.size--;
+        if (node.hasEntries() || parent == null) {
+            return;
+        }
+        node.entries = null;
+        if (node.keys.length == 0) {
+            parent.delete(node.label.charAt(0));
+            if (parent != this.root && !parent.hasEntries() && parent.keys.length == 1) {
+                merge(parent);
+            }
+        } else if (node.keys.length == 1) {
+            merge(node);
+        }
+    }
+
+    /**
+     * Checks if the trie contains the title, ignoring case.
+     *
+     * @param title the title
+     * @return {@code true} if there is an entry with the title
+     */
+    boolean contains(String title) {
+        Node node = node(title);
+        return node != null && node.hasEntries();
+    }
+
+    /**
+     * Gets the entry with exactly the given title. Entries whose title only differs in case are
+     * not returned.
+     *
+     * @param title the title
+     * @return the first entry with the title, or {@code null}
+     */
+    Entry get(String title) {
+        Node node = node(title);
+        if (node == null || !node.hasEntries()) {
+            return null;
+        }
+        for (Entry entry : node.entries) {
+            if (title.equals(entry.getTitle())) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the node of the case folded title, or {@code null} if there is none.
+     */
+    private Node node(String title) {
+        String key = DataModel.foldTitle(title);
+        Node node = this.root;
+        int i = 0;
+        while (i < key.length()) {
+            node = node.child(key.charAt(i));
+            if (node == null || !key.startsWith(node.label, i)) {
+                return null;
+            }
+            i += node.label.length();
+        }
+        return node;
+    }
+
+    /**
+     * Gets the titles starting with the given prefix, ignoring case.
+     *
+     * @param prefix the prefix
+     * @param limit maximum number of titles
+     * @return matching titles in case insensitive order
+     */
+    List<String> complete(String prefix, int limit) {
+        List<String> result = new ArrayList<>();
+        String key = DataModel.foldTitle(prefix);
+        Node node = this.root;
+        int i = 0;
+        while (i < key.length()) {
+            node = node.child(key.charAt(i));
+            if (node == null) {
+                return result;
+            }
+            int common = commonPrefix(node.label, key, i);
+            if (common < node.label.length() && i + common < key.length()) {
+                return result;
+            }
+            i += common;
+        }
+        collect(node, limit, result);
+        return result;
+    }
+
+    private static void collect(Node node, int limit, List<String> result) {
+        if (result.size() >= limit) {
+            return;
+        }
+        if (node.hasEntries()) {
+            result.add(node.entries.get(0).getTitle());
+        }
+        for (Node child : node.children) {
+            collect(child, limit, result);
+        }
+    }
+
+    /**
+     * Merges the node with its only child.
+     */
+    private static void merge(Node node) {
+        Node child = node.children[0];
+        node.label = node.label + child.label;
+        node.keys = child.keys;
+        node.children = child.children;
+        node.entries = child.entries;
+    }
+
+    private static int commonPrefix(String label, String key, int offset) {
+        int max = Math.min(label.length(), key.length() - offset);
+        int i = 0;
+        while (i < max && label.charAt(i) == key.charAt(offset + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean removeIdentical(List<Entry> entries, Entry entry) {
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i) == entry) {
+                entries.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,209 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inverted index from the trigrams of the case folded entry titles to the entries. A substring
+ * query intersects the posting lists of its trigrams, so only the candidate entries are compared
+ * with the query.
+ *
+ * <p>
+ * Every entry gets a slot number when it is added; slot numbers are never reused, so the posting
+ * lists stay sorted by appending. A removed entry leaves its slot in the posting lists as a
+ * tombstone, which lookups skip. When most of the slots are free the index is compacted, which
+ * drops the tombstones.
+ *
+ * @author Haikal Izzuddin
+ *
+ */
+final class TitleTrigramIndex {
+
+    private static final int GRAM = 3;
+
+    /**
+     * Sorted list of slot numbers, including the slots of removed entries.
+     */
+    private static final class Posting {
+        private int[] slots = new int[4];
+        private int size = 0;
+        private int live = 0;
+
+        private void add(int slot) {
+            if (this.size == this.slots.length) {
+                this.slots = Arrays.copyOf(this.slots, this.size * 2);
+            }
+            this.slots[this.size++] = slot;
+            this.live++;
+        }
+
+        private boolean contains(int slot) {
+            return Arrays.binarySearch(this.slots, 0, this.size, slot) >= 0;
+        }
+    }
+
+    private final Map<Long, Posting> postings = new HashMap<>();
+    private final Map<Entry, Integer> slotOf = new IdentityHashMap<>();
+    private Entry[] entries = new Entry[16];
+    private String[] folded = new String[16];
+    private int nextSlot = 0;
+
+    /**
+     * Removes all entries from the index.
+     */
+    void clear() {
+        this.postings.clear();
+        this.slotOf.clear();
+        this.entries = new Entry[16];
+        this.folded = new String[16];
+        this.nextSlot = 0;
+    }
+
+    /**
+     * Replaces the content of the index with the given entries.
+     *
+     * @param list the entries
+     */
+    void reset(List<Entry> list) {
+        clear();
+        for (Entry entry : list) {
+            add(entry);
+        }
+    }
+
+    /**
+     * Adds an entry to the index.
+     *
+     * @param entry the entry
+     */
+    void add(Entry entry) {
+        if (entry.getTitle() == null || this.slotOf.containsKey(entry)) {
+            return;
+        }
+        if (this.nextSlot == this.entries.length) {
+            this.entries = Arrays.copyOf(this.entries, this.nextSlot * 2);
+            this.folded = Arrays.copyOf(this.folded, this.nextSlot * 2);
+        }
+        int slot = this.nextSlot++;
+        String title = DataModel.foldTitle(entry.getTitle());
+        this.entries[slot] = entry;
+        this.folded[slot] = title;
+        this.slotOf.put(entry, slot);
+        for (long gram : grams(title)) {
+            this.postings.computeIfAbsent(gram, key -> new Posting()).add(slot);
+        }
+    }
+
+    /**
+     * Removes an entry from the index.
+     *
+     * @param entry the entry
+     */
+    void remove(Entry entry) {
+        Integer slot = this.slotOf.remove(entry);
+        if (slot == null) {
+            return;
+        }
+        for (long gram : grams(this.folded[slot])) {
+            Posting posting = this.postings.get(gram);
+            // the slot stays in the list as a tombstone
+            if (posting != null && --posting.live == 0) {
+                this.postings.remove(gram);
+            }
+        }
+        this.entries[slot] = null;
+        this.folded[slot] = null;
+        if (this.nextSlot > 1024 && this.slotOf.size() < this.nextSlot / 2) {
+            compact();
+        }
+    }
+
+    /**
+     * Finds the entries whose title contains the given text, ignoring case.
+     *
+     * @param text the text to look for
+     * @return the matching entries in no particular order, or {@code null} if the text is too
+     * short to be looked up in the index
+     */
+    List<Entry> find(String text) {
+        String query = DataModel.foldTitle(text);
+        if (query.length() < GRAM) {
+            return null;
+        }
+        List<Posting> lists = new ArrayList<>();
+        for (long gram : grams(query)) {
+            Posting posting = this.postings.get(gram);
+            if (posting == null) {
+                return new ArrayList<>();
+            }
+            lists.add(posting);
+        }
+        lists.sort((a, b) -> Integer.compare(a.size, b.size));
+
+        Posting smallest = lists.get(0);
+        List<Entry> result = new ArrayList<>();
+        for (int i = 0; i < smallest.size; i++) {
+            int slot = smallest.slots[i];
+            boolean candidate = this.entries[slot] != null;
+            for (int j = 1; j < lists.size() && candidate; j++) {
+                candidate = lists.get(j).contains(slot);
+            }
+            // trigrams may occur in a different order, so the candidates are verified
+            if (candidate && this.folded[slot].contains(query)) {
+                result.add(this.entries[slot]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Estimates the number of candidates of a lookup, which is the length of the shortest
+     * posting list of the trigrams of the text.
+     *
+     * @param text the text to look for
+     * @return the number of candidates, or -1 if the text is too short to be looked up
+     */
+    int estimate(String text) {
+        String query = DataModel.foldTitle(text);
+        if (query.length() < GRAM) {
+            return -1;
+        }
+        int min = Integer.MAX_VALUE;
+        for (long gram : grams(query)) {
+            Posting posting = this.postings.get(gram);
+            min = Math.min(min, posting == null ? 0 : posting.live);
+        }
+        return min;
+    }
+
+    private void compact() {
+        List<Entry> live = new ArrayList<>(this.slotOf.size());
+        for (int i = 0; i < this.nextSlot; i++) {
+            if (this.entries[i] != null) {
+                live.add(this.entries[i]);
+            }
+        }
+        reset(live);
+    }
+
+    /**
+     * Gets the distinct trigrams of the text, each packed into a long.
+     */
+    private static long[] grams(String text) {
+        int count = Math.max(0, text.length() - GRAM + 1);
+        long[] grams = new long[count];
+        for (int i = 0; i < count; i++) {
+            grams[i] = ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+        }
+        Arrays.sort(grams);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || grams[i] != grams[i - 1]) {
+                grams[distinct++] = grams[i];
+            }
+        }
+        return distinct == count ? grams : Arrays.copyOf(grams, distinct);
+    }
+}
@@ -0,0 +1,168 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Undo and redo history of the modifications of the entries. Entries are never modified in
+ * place, editing replaces them, so a step only keeps references to the entries it replaced or
+ * added; they are shared with the data model, and nothing else of the model is copied. An
+ * import keeps the snapshot of the previous document, which is also shared.
+ *
+ * <p>
+ * Every step is charged with the estimated size of the entries it references. When the total
+ * exceeds the {@code undo.history.max.kilobytes} configuration value (default 16384), the
+ * oldest steps are dropped.
+ *
+ * @author Haikal Izzuddin
+ *
+ */
+final class UndoHistory {
+
+    /**
+     * An undoable modification.
+     */
+    private static final class Step {
+        private final String name;
+        private final long cost;
+        private final Runnable undo;
+        private final Runnable redo;
+
+        private Step(String name, long cost, Runnable undo, Runnable redo) {
+            this.name = name;
+            this.cost = cost;
+            this.undo = undo;
+            this.redo = redo;
+        }
+    }
+
+    private final DataModel model;
+    private final long limit;
+    private final Deque<Step> undoSteps = new ArrayDeque<>();
+    private final Deque<Step> redoSteps = new ArrayDeque<>();
+    private long cost = 0;
+
+    /**
+     * Creates an empty history of the given data model.
+     *
+     * @param model the data model
+     */
+    UndoHistory(DataModel model) {
+        this.model = model;
+        this.limit = Math.max(0, Configuration.getInstance().getInteger("undo.history.max.kilobytes", 16384)) * 1024L;
+    }
+
+    /**
+     * Records an added, edited or deleted entry.
+     *
+     * @param name name of the modification
+     * @param oldEntry the replaced or deleted entry, {@code null} if an entry has been added
+     * @param newEntry the new entry, {@code null} if an entry has been deleted
+     */
+    void recordEntry(String name, Entry oldEntry, Entry newEntry) {
+        long stepCost = (oldEntry == null ? 0 : oldEntry.footprint()) + (newEntry == null ? 0 : newEntry.footprint());
+        record(new Step(name, stepCost, () -> apply(newEntry, oldEntry), () -> apply(oldEntry, newEntry)));
+    }
+
+    /**
+     * Records an import, which replaced every entry and the file of the document.
+     *
+     * @param previous snapshot of the entries before the import
+     * @param fileName file name before the import
+     * @param password password before the import
+     * @param modified modified state before the import
+     * @param imported snapshot of the imported entries
+     */
+    void recordImport(Entries previous, String fileName, byte[] password, boolean modified, Entries imported) {
+        long stepCost = cost(previous) + cost(imported);
+        record(new Step("Import", stepCost, () -> {
+            restore(previous);
+            this.model.setFileName(fileName);
+            this.model.setPassword(password);
+            this.model.setModified(modified);
+        }, () -> {
+            restore(imported);
+            this.model.setFileName(null);
+            this.model.setPassword(null);
+            this.model.setModified(true);
+        }));
+    }
+
+    /**
+     * Undoes the latest modification.
+     *
+     * @return name of the undone modification, or {@code null} if there is nothing to undo
+     */
+    String undo() {
+        Step step = this.undoSteps.pollFirst();
+        if (step == null) {
+            return null;
+        }
+        step.undo.run();
+        this.redoSteps.addFirst(step);
+        return step.name;
+    }
+
+    /**
+     * Redoes the latest undone modification.
+     *
+     * @return name of the redone modification, or {@code null} if there is nothing to redo
+     */
+    String redo() {
+        Step step = this.redoSteps.pollFirst();
+        if (step == null) {
+            return null;
+        }
+        step.redo.run();
+        this.undoSteps.addFirst(step);
+        return step.name;
+    }
+
+    /**
+     * Drops every step, called when another document is opened or created.
+     */
+    void clear() {
+        this.undoSteps.clear();
+        this.redoSteps.clear();
+        this.cost = 0;
+    }
+
+    private void record(Step step) {
+        for (Step dropped : this.redoSteps) {
+            this.cost -= dropped.cost;
+        }
+        this.redoSteps.clear();
+        this.undoSteps.addFirst(step);
+        this.cost += step.cost;
+        while (this.cost > this.limit && !this.undoSteps.isEmpty()) {
+            this.cost -= this.undoSteps.pollLast().cost;
+        }
+    }
+
+    private void apply(Entry from, Entry to) {
+        this.model.setModified(true);
+        if (from == null) {
+            this.model.addEntry(to);
+        } else if (to == null) {
+            this.model.removeEntry(from);
+        } else {
+            this.model.replaceEntry(from, to);
+        }
+    }
+
+    /**
+     * Replaces the entries of the model with a copy of the snapshot, which is read-only.
+     */
+    private void restore(Entries snapshot) {
+        this.model.setEntries(Entries.of(new ArrayList<>(snapshot.getEntry())));
+    }
+
+    private static long cost(Entries entries) {
+        List<Entry> list = entries.getEntry();
+        long total = 16L + list.size() * 8L;
+        for (Entry entry : list) {
+            total += entry.footprint();
+        }
+        return total;
+    }
+}
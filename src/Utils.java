@@ -38,6 +38,46 @@ final class StringUtils {
         return out.toString();
     }
 
+    /**
+     * Checks if the text contains the given part, ignoring case, without creating new strings.
+     *
+     * @param text the text
+     * @param part the part to look for
+     * @return {@code true} if the text contains the part
+     */
+    static boolean containsIgnoreCase(final String text, final String part) {
+        if (text == null) {
+            return false;
+        }
+        if (part.isEmpty()) {
+            return true;
+        }
+        char first = fold(part.charAt(0));
+        int last = text.length() - part.length();
+        for (int i = 0; i <= last; i++) {
+            if (fold(text.charAt(i)) == first) {
+                int j = 1;
+                while (j < part.length() && fold(text.charAt(i + j)) == fold(part.charAt(j))) {
+                    j++;
+                }
+                if (j == part.length()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Folds the case of a character the same way as {@link String#equalsIgnoreCase(String)}.
+     *
+     * @param c the character
+     * @return the case folded character
+     */
+    static char fold(final char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
     static String stripString(String text) {
         return stripString(text, 80);
     }
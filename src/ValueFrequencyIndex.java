@@ -0,0 +1,128 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Counts the distinct values of an entry field, for example the user names. The suggestions for
+ * a prefix are ranked by the number of entries using the value, so the most reused values come
+ * first. Adding or removing an entry updates a single counter.
+ *
+ * @author Haikal Izzuddin
+ *
+ */
+final class ValueFrequencyIndex {
+
+    private static final String SCHEME_SEPARATOR = "://";
+
+    private final Function<Entry, String> field;
+    private final Map<String, Integer> counts;
+
+    private ValueFrequencyIndex(Function<Entry, String> field, Map<String, Integer> counts) {
+        this.field = field;
+        this.counts = counts;
+    }
+
+    /**
+     * Builds a new index from the given entries. The values are read and counted in parallel,
+     * and the partial counts are merged.
+     *
+     * @param entries the entries
+     * @param field gets the value of the entry, can return {@code null}
+     * @return the index
+     */
+    static ValueFrequencyIndex build(List<Entry> entries, Function<Entry, String> field) {
+        Map<String, Integer> counts = entries.parallelStream()
+                .map(field)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toMap(Function.identity(), value -> 1, Integer::sum, HashMap::new));
+        return new ValueFrequencyIndex(field, counts);
+    }
+
+    /**
+     * Adds the value of the entry.
+     *
+     * @param entry the entry
+     */
+    synchronized void add(Entry entry) {
+        String value = this.field.apply(entry);
+        if (value != null) {
+            this.counts.merge(value, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Removes the value of the entry.
+     *
+     * @param entry the entry
+     */
+    synchronized void remove(Entry entry) {
+        String value = this.field.apply(entry);
+        if (value != null) {
+            this.counts.computeIfPresent(value, (key, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    /**
+     * Gets the values starting with the given prefix, ignoring case. For URLs the prefix is also
+     * matched after the scheme, so {@code git} suggests {@code https://github.com}.
+     *
+     * @param prefix the prefix
+     * @param limit maximum number of values
+     * @return the matching values, most used first
+     */
+    synchronized List<String> suggest(String prefix, int limit) {
+        List<Map.Entry<String, Integer>> matches = new ArrayList<>();
+        for (Map.Entry<String, Integer> count : this.counts.entrySet()) {
+            String value = count.getKey();
+            int scheme = value.indexOf(SCHEME_SEPARATOR);
+            if (value.regionMatches(true, 0, prefix, 0, prefix.length())
+                    || scheme >= 0 && value.regionMatches(true, scheme + SCHEME_SEPARATOR.length(), prefix, 0, prefix.length())) {
+                matches.add(count);
+            }
+        }
+        matches.sort((a, b) -> {
+            int c = Integer.compare(b.getValue(), a.getValue());
+            return c != 0 ? c : SortedTitleIndex.ORDER.compare(a.getKey(), b.getKey());
+        });
+        List<String> result = new ArrayList<>(Math.min(limit, matches.size()));
+        for (int i = 0; i < matches.size() && i < limit; i++) {
+            result.add(matches.get(i).getKey());
+        }
+        return result;
+    }
+
+    /**
+     * Gets the base of the URL: the scheme, the host and the port. The user info is dropped, it
+     * may hold a user name and password.
+     *
+     * @param url the URL, can be null
+     * @return the base URL, or {@code null} if the URL is empty
+     */
+    static String baseUrlOf(String url) {
+        if (url == null || url.trim().isEmpty()) {
+            return null;
+        }
+        String base = url.trim();
+        int scheme = base.indexOf(SCHEME_SEPARATOR);
+        int start = scheme < 0 ? 0 : scheme + SCHEME_SEPARATOR.length();
+        int end = base.length();
+        for (int i = start; i < base.length(); i++) {
+            char c = base.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                end = i;
+                break;
+            }
+        }
+        int userInfo = base.lastIndexOf('@', end - 1);
+        if (userInfo >= start) {
+            base = base.substring(0, start) + base.substring(userInfo + 1, end);
+        } else {
+            base = base.substring(0, end);
+        }
+        return base.length() > start ? base : null;
+    }
+}
@@ -1,8 +1,9 @@
 import javax.swing.SwingWorker;
 
 /**
- * Worker class for time consuming tasks. While the task is running, the main application is
- * disabled, and a progress indicator is shown.
+ * Worker class for time consuming tasks. While a blocking task is running, the main application
+ * is disabled, and a progress indicator is shown. A background task only shows the progress
+ * indicator, so it must not touch the live data model.
  *
  * @author Gabor_Bata
  *
@@ -15,13 +16,33 @@ abstract class Worker extends SwingWorker<Void, Void> {
     private final PasswordManagerFrame parent;
 
     /**
-     * Creates a new worker instance.
+     * Whether the main application is disabled while the task is running.
+     */
+    private final boolean blocking;
+
+    /**
+     * Creates a new blocking worker instance.
      *
      * @param parent main application frame
      */
     Worker(final PasswordManagerFrame parent) {
+        this(parent, true);
+    }
+
+    /**
+     * Creates a new worker instance.
+     *
+     * @param parent main application frame
+     * @param blocking whether the main application is disabled while the task is running
+     */
+    Worker(final PasswordManagerFrame parent, final boolean blocking) {
         this.parent = parent;
-        this.parent.setProcessing(true);
+        this.blocking = blocking;
+        if (blocking) {
+            this.parent.setProcessing(true);
+        } else {
+            this.parent.startBackgroundTask();
+        }
     }
 
     /**
@@ -56,10 +77,15 @@ abstract class Worker extends SwingWorker<Void, Void> {
     }
 
     /**
-     * Stops progress indicator and refreshes UI.
+     * Stops progress indicator and refreshes the frame title. The entry list follows the
+     * modifications of the data model on its own.
      */
     void stopProcessing() {
-        this.parent.setProcessing(false);
-        this.parent.refreshAll();
+        if (this.blocking) {
+            this.parent.setProcessing(false);
+        } else {
+            this.parent.stopBackgroundTask();
+        }
+        this.parent.refreshFrameTitle();
     }
 }
@@ -1,3 +1,5 @@
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.dataformat.xml.JacksonXmlModule;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
@@ -23,6 +25,11 @@ class XmlConverter<T> {
         JacksonXmlModule module = new JacksonXmlModule();
         module.setDefaultUseWrapper(false);
         this.mapper = new XmlMapper(module);
+        // only the explicitly annotated accessors are written, so helper methods and internal
+        // state of the document classes never leak into the XML
+        this.mapper.setVisibility(PropertyAccessor.GETTER, JsonAutoDetect.Visibility.NONE);
+        this.mapper.setVisibility(PropertyAccessor.IS_GETTER, JsonAutoDetect.Visibility.NONE);
+        this.mapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.NONE);
         this.mapper.enable(SerializationFeature.INDENT_OUTPUT);
         this.mapper.enable(ToXmlGenerator.Feature.WRITE_XML_DECLARATION);
     }